@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.fms.tile.common.TileExecutable;
+import com.vmware.fms.tile.common.TileExecutableResponse;
+import com.vmware.fms.tile.common.TileProperties;
+import com.vmware.fms.tile.common.TileUtils;
+import com.vmware.fms.tile.test.TileVerificationExecutor;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTRequest;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTResponse;
+import com.vmware.vrcs.plugin.rest.utils.ResponseBenchmark;
+
+// Whole requests against a server in the same JVM, from RESTClient.execute up to a task or a preview tile run, over
+// keep-alive connections as on an appliance. Run with -t to see how the shared connection pool copes with threads.
+// The server sends the headers and the body separately, so without nodelay each response would wait out a delayed
+// acknowledgement and the benchmarks would measure that instead.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class ExecuteBenchmark {
+
+    // Held here as the level would be lost if the logger were garbage collected
+    private static final Logger pluginLogger = Logger.getLogger("com.vmware.vrcs.plugin.rest");
+
+    private static final String PATH = "/items";
+
+    @Param({ "1024", "65536" })
+    public int bodySize;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String endpointUrl;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Keep the per-request logging out of the measurements
+        pluginLogger.setLevel(Level.WARNING);
+
+        byte[] body = ResponseBenchmark.createJson(this.bodySize);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext(PATH, exchange -> {
+            // Previews of the same request would otherwise be served from the cache
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+            exchange.getResponseHeaders().add("Cache-Control", "no-store");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        this.serverExecutor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.serverExecutor);
+        this.server.start();
+        this.endpointUrl = "http://localhost:" + this.server.getAddress().getPort();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+    }
+
+    // The inputs and response of one tile run for each benchmark thread
+    @State(Scope.Thread)
+    public static class TileRun {
+        private TaskTile taskTile;
+        private PreviewTile previewTile;
+        private TileVerificationExecutor taskExecutor;
+        private TileVerificationExecutor previewExecutor;
+
+        @Setup
+        public void setUp(ExecuteBenchmark benchmark) {
+            this.taskTile = new TaskTile();
+            this.previewTile = new PreviewTile();
+            this.taskExecutor = createExecutor(this.taskTile, benchmark.endpointUrl);
+            this.previewExecutor = createExecutor(this.previewTile, benchmark.endpointUrl);
+        }
+
+        private static TileVerificationExecutor createExecutor(TileExecutable tile, String endpointUrl) {
+            TileVerificationExecutor executor = new TileVerificationExecutor(tile);
+            TileUtils tileUtils = executor.getRequest().getTileUtils();
+            TileProperties endpointProperties = tileUtils.newTileProperties();
+            endpointProperties.setString("url", endpointUrl);
+            endpointProperties.setString("username", "");
+            endpointProperties.setString("password", "");
+            endpointProperties.setString("truststore", "");
+
+            TileProperties inputProperties = tileUtils.newTileProperties();
+            inputProperties.setProperties("endpoint", endpointProperties);
+            inputProperties.setString("path", PATH);
+            inputProperties.setPropertiesArray("headers", new ArrayList<>());
+            inputProperties.setString("method", "GET");
+            inputProperties.setString("body", "");
+            inputProperties.setString("expectedStatuses", "2xx");
+            inputProperties.setString("expectedResponse", "\"status\":\"(COMPLETED|FAILED)\"");
+            executor.setInputProperties(inputProperties);
+            return executor;
+        }
+    }
+
+    @Benchmark
+    public RESTResponse execute() throws RESTException {
+        return RESTClient.execute(new RESTRequest()
+                .setEndpointUrl(this.endpointUrl)
+                .setPath(PATH)
+                .setMethod("GET"));
+    }
+
+    @Benchmark
+    public TileExecutableResponse executeTaskTile(TileRun run) {
+        // Called directly rather than through the executor so that only the tile is measured
+        TileExecutableResponse response = run.taskExecutor.getResponse();
+        response.setCompleted(true);
+        run.taskTile.handleExecute(run.taskExecutor.getRequest(), response);
+        return response;
+    }
+
+    @Benchmark
+    public String executePreviewTile(TileRun run) {
+        TileExecutableResponse response = run.previewExecutor.getResponse();
+        run.previewTile.handleExecute(run.previewExecutor.getRequest(), response);
+        return response.getOutputProperties().getAsString("responsePreview");
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+// The checks TaskTile makes on every response: the expected response expression against the body and the status
+// against the expected statuses, which a polling task parses on its first run and restores on every later one
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchingBenchmark {
+
+    private static final String EXPECTED_STATUSES = "200,201-204,3xx";
+
+    private List<Long> savedStatuses;
+
+    @Setup
+    public void setUp() throws RESTException {
+        this.savedStatuses = StatusSet.parse(EXPECTED_STATUSES).toWords();
+    }
+
+    // Only the expression benchmarks depend on the body, so only they run for each expression and body size
+    @State(Scope.Thread)
+    public static class Response {
+
+        // Plain text that is not in the body so the whole body is searched, an anchored expression and an alternation
+        @Param({ "\"status\":\"DONE\"", "^\\[\\{\"id\":0,", "\"status\":\"(DONE|FAILED)\"" })
+        public String expectedResponse;
+
+        @Param({ "1024", "65536", "1048576" })
+        public int bodySize;
+
+        private String body;
+
+        @Setup
+        public void setUp() {
+            this.body = new String(ResponseBenchmark.createJson(this.bodySize), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public boolean findExpectedResponse(Response response) {
+        return PatternCache.getShared().get(response.expectedResponse).find(response.body);
+    }
+
+    @Benchmark
+    public boolean findExpectedResponseUncached(Response response) {
+        // What every check cost before compiled expressions were cached
+        return Pattern.compile(response.expectedResponse).matcher(response.body).find();
+    }
+
+    @Benchmark
+    public boolean parseExpectedStatuses() throws RESTException {
+        return StatusSet.parse(EXPECTED_STATUSES).contains(204);
+    }
+
+    @Benchmark
+    public boolean restoreExpectedStatuses() {
+        return StatusSet.fromWords(this.savedStatuses).contains(204);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTResponse;
+
+// Reading a response that is already in memory, so that only the work RESTResponse does is measured and not the
+// network. Run with -prof gc to see how much each read allocates.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBenchmark {
+
+    // Held here as the level would be lost if the logger were garbage collected
+    private static final Logger pluginLogger = Logger.getLogger("com.vmware.vrcs.plugin.rest");
+
+    // 1KB up to the 4MB limit on tile outputs
+    @Param({ "1024", "65536", "1048576", "4194304" })
+    public int bodySize;
+
+    @Param({ "identity", "gzip" })
+    public String encoding;
+
+    @Param({ "8", "32" })
+    public int headerCount;
+
+    private byte[] body;
+    private Map<String, List<String>> headers;
+    private URL url;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Keep the per-request logging out of the measurements
+        pluginLogger.setLevel(Level.WARNING);
+
+        byte[] json = createJson(this.bodySize);
+        this.body = this.encoding.equals(ContentEncoding.GZIP) ? ContentEncoding.gzip(json) : json;
+        this.headers = createHeaders(this.headerCount, this.encoding, this.body.length);
+        this.url = new URL("http://localhost:9090/benchmark");
+    }
+
+    @Benchmark
+    public RESTResponse readResponse() throws RESTException {
+        return new RESTResponse(new BufferedConnection(this.url, this.headers, this.body), RESTClient.OnOversize.FAIL);
+    }
+
+    @Benchmark
+    public RESTResponse readHeaders() throws IOException {
+        // The status and headers only, as for an event stream
+        return new RESTResponse(new BufferedConnection(this.url, this.headers, this.body));
+    }
+
+    public static byte[] createJson(int size) {
+        // Records like those of a typical list API, cut to the exact size
+        StringBuilder json = new StringBuilder(size + 128).append('[');
+        for (int i = 0; json.length() < size; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i)
+                    .append(",\"name\":\"item-").append(i)
+                    .append("\",\"status\":\"").append(i % 7 == 0 ? "FAILED" : "COMPLETED")
+                    .append("\",\"tags\":[\"alpha\",\"beta\"]}");
+        }
+        json.setLength(size - 1);
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static Map<String, List<String>> createHeaders(int count, String encoding, int contentLength) {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put(null, Collections.singletonList("HTTP/1.1 200 OK"));
+        headers.put("Content-Type", Collections.singletonList("application/json; charset=utf-8"));
+        headers.put("Content-Length", Collections.singletonList(String.valueOf(contentLength)));
+        if (!encoding.equals("identity")) {
+            headers.put("Content-Encoding", Collections.singletonList(encoding));
+        }
+        for (int i = headers.size(); i < count; i++) {
+            headers.put("X-Benchmark-Header-" + i, Collections.singletonList("value-" + i));
+        }
+        return headers;
+    }
+
+    // A connection that has already received its response
+    static class BufferedConnection extends HttpURLConnection {
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+
+        BufferedConnection(URL url, Map<String, List<String>> headers, byte[] body) {
+            super(url);
+            this.headers = headers;
+            this.body = body;
+            this.responseCode = HTTP_OK;
+            this.connected = true;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return this.responseCode;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            return this.headers;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            for (Map.Entry<String, List<String>> header : this.headers.entrySet()) {
+                if (header.getKey() != null && header.getKey().equalsIgnoreCase(name)) {
+                    return header.getValue().get(0);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(this.body);
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return null;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+/**
+ * Render the batch form. The same view is used for configuring the task and for showing its result, in which case the
+ * form is read only.
+ */
+
+/**
+ * The options for rendering "Input Parameters" (input) section of the batch form. For more details about these options,
+ * please refer to http://alpacajs.org/documentation.html
+ */
+var inputAlpaca = {
+    schema: {
+        title: VRCS.view.alpaca.createTitleWithIcon('Input Parameters', 'help', 'help.html'),
+        type: 'object',
+        properties: {
+            endpoint: {
+                title: 'Endpoint',
+                required: true
+            },
+            requests: {
+                title: 'Requests',
+                type: 'array',
+                dependencies: ['endpoint'],
+                items: {
+                    type: 'object',
+                    properties: {
+                        method: {
+                            title: 'Method',
+                            default: 'GET',
+                            enum: ['GET', 'POST', 'PUT', 'HEAD', 'OPTIONS', 'DELETE', 'TRACE']
+                        },
+                        path: {
+                            title: 'Relative Path',
+                            type: 'string',
+                            required: true
+                        },
+                        body: {
+                            title: 'Body',
+                            type: 'string'
+                        }
+                    }
+                }
+            },
+            concurrency: {
+                title: 'Concurrent Requests',
+                type: 'integer',
+                default: 8,
+                minimum: 1,
+                maximum: 32,
+                dependencies: ['endpoint']
+            },
+            failFast: {
+                title: 'Fail Fast',
+                type: 'boolean',
+                dependencies: ['endpoint']
+            },
+            ordered: {
+                title: 'Ordered Results',
+                type: 'boolean',
+                default: true,
+                dependencies: ['endpoint']
+            },
+            timeout: {
+                title: 'Timeout',
+                type: 'integer',
+                minimum: 0,
+                dependencies: ['endpoint']
+            },
+            onOversize: {
+                title: 'Results Over 4MB',
+                dependencies: ['endpoint'],
+                default: 'fail',
+                enum: ['fail', 'truncate']
+            }
+        }
+    },
+    options: {
+        fields: {
+            endpoint: {
+                type: 'select',
+                noneLabel: '-- Select Endpoint --',
+                removeDefaultNone: false,
+                dataSource: function(setOptionFn) {
+                    /**
+                     * Provide the select with a list of endpoints that have been registered.
+                     */
+                    VRCS.io.queryEndpoints({
+                        dataType: 'vrcs.rest-sample:RESTEndpoint',
+                        complete: function(servers) {
+                            var endpoints = servers.map(function(server) {
+                                return {
+                                    text: server.name,
+                                    value: server.reference
+                                };
+                            });
+                            setOptionFn(endpoints);
+                        },
+                        fail: function(error) {
+                            VRCS.log.error(error);
+                            VRCS.view.showMessage('Failed to retrieve REST Endpoint.');
+                        }
+                    });
+                }
+            },
+            requests: {
+                type: 'table',
+                showActionsColumn: false,
+                hideToolbar: false,
+                hideToolbarWithChildren: false,
+                items: {
+                    fields: {
+                        method: {
+                            type: 'select',
+                            removeDefaultNone: true,
+                            sort: false
+                        },
+                        path: {
+                            placeholder: 'eg: /rest-api/resource'
+                        },
+                        body: {
+                            placeholder: 'Body for POST and PUT requests'
+                        }
+                    }
+                },
+                toolbar: {
+                    actions: [{
+                        label: 'Add Request',
+                        action: 'add'
+                    }, {
+                        label: 'Remove Last Request',
+                        action: 'removeLast',
+                        iconClass: 'glyphicon glyphicon-minus-sign',
+                        click: function(key, action, itemIndex) {
+                            var value = this.getValue();
+                            if (value.length > 0) {
+                                value.pop();
+                                this.setValue(value);
+                            }
+                        }
+                    }]
+                }
+            },
+            concurrency: {
+                inputType: 'number'
+            },
+            failFast: {
+                type: 'checkbox',
+                rightLabel: 'Stop sending requests after the first one fails.'
+            },
+            ordered: {
+                type: 'checkbox',
+                rightLabel: 'Report results in the order of the requests rather than the order they completed.'
+            },
+            timeout: {
+                inputType: 'number',
+                placeholder: 'Leave blank to wait for all requests'
+            },
+            onOversize: {
+                type: 'select',
+                removeDefaultNone: true,
+                sort: false,
+                optionLabels: ['Fail the batch', 'Leave out the headers and body of the results that do not fit']
+            }
+        }
+    }
+};
+
+/**
+ * The options for rendering "Output Parameters" section of the batch form. For more details about these options,
+ * please refer to http://alpacajs.org/documentation.html
+ */
+var outputAlpaca = {
+    schema: {
+        title: 'Output Parameters',
+        type: 'object'
+    },
+    options: {
+        type: 'vrcs-outputtable',
+        appendStatus: true
+    }
+};
+
+VRCS.view.alpaca.showForm({
+    alpacaForm: {
+        schema: {
+            type: 'object',
+            properties: {
+                input: inputAlpaca.schema,
+                output: outputAlpaca.schema
+            }
+        },
+        options: {
+            fields: {
+                input: inputAlpaca.options,
+                output: outputAlpaca.options
+            }
+        }
+    }
+});
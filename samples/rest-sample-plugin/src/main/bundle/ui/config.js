@@ -76,6 +76,12 @@ var inputAlpaca = {
                 type: 'string',
                 dependencies: ['method']
             },
+            compressionThreshold: {
+                title: 'Compress Body Over (bytes)',
+                type: 'integer',
+                minimum: 0,
+                dependencies: ['method']
+            },
             expectedStatuses: {
                 title: 'Expected Status Codes',
                 type: 'string',
@@ -86,17 +92,120 @@ var inputAlpaca = {
                 type: 'string',
                 dependencies: ['endpoint']
             },
+            expectedJson: {
+                title: 'Expected JSON Condition',
+                type: 'string',
+                dependencies: ['endpoint']
+            },
+            onOversize: {
+                title: 'Response Over 4MB',
+                dependencies: ['endpoint'],
+                default: 'fail',
+                enum: ['fail', 'truncate']
+            },
+            extract: {
+                title: 'Extract Values',
+                type: 'array',
+                dependencies: ['endpoint'],
+                items: {
+                    type: 'object',
+                    properties: {
+                        name: {
+                            title: 'Name',
+                            type: 'string'
+                        },
+                        expression: {
+                            title: 'JSON Path or XPath',
+                            type: 'string'
+                        }
+                    }
+                }
+            },
+            omitResponseBody: {
+                title: 'Omit Response Body',
+                type: 'boolean',
+                dependencies: ['endpoint']
+            },
+            coalesce: {
+                title: 'Share Identical Requests',
+                type: 'boolean',
+                dependencies: ['method']
+            },
+            connectTimeout: {
+                title: 'Connect Timeout (sec)',
+                type: 'integer',
+                minimum: 1,
+                dependencies: ['endpoint']
+            },
+            readTimeout: {
+                title: 'Read Timeout (sec)',
+                type: 'integer',
+                minimum: 1,
+                dependencies: ['endpoint']
+            },
+            retries: {
+                title: 'Retries',
+                type: 'integer',
+                minimum: 0,
+                dependencies: ['endpoint']
+            },
+            retryNonIdempotent: {
+                title: 'Retry POST Requests',
+                type: 'boolean',
+                dependencies: ['method']
+            },
+            paginate: {
+                title: 'Pagination',
+                default: 'none',
+                enum: ['none', 'link', 'cursor'],
+                dependencies: ['endpoint']
+            },
+            cursorPath: {
+                title: 'Cursor Path',
+                type: 'string',
+                required: true,
+                dependencies: ['paginate']
+            },
+            cursorParam: {
+                title: 'Cursor Query Parameter',
+                type: 'string',
+                required: true,
+                dependencies: ['paginate']
+            },
+            itemsPath: {
+                title: 'Items Path',
+                type: 'string',
+                dependencies: ['paginate']
+            },
+            pageLimit: {
+                title: 'Page Limit',
+                type: 'integer',
+                default: 10,
+                minimum: 1,
+                dependencies: ['paginate']
+            },
+            prefetch: {
+                title: 'Prefetch',
+                type: 'boolean',
+                dependencies: ['paginate']
+            },
             poll: {
                 title: 'Poll',
                 type: 'boolean',
-                dependencies: ['expectedResponse']
+                dependencies: ['endpoint']
+            },
+            waitMode: {
+                title: 'Wait Mode',
+                default: 'interval',
+                enum: ['interval', 'sse', 'longpoll'],
+                dependencies: ['poll']
             },
             interval: {
                 title: 'Interval',
                 type: 'integer',
                 required: true,
                 minimum: 1,
-                dependencies: ['poll']
+                dependencies: ['poll', 'waitMode']
             },
             timeout: {
                 title: 'Timeout',
@@ -105,6 +214,25 @@ var inputAlpaca = {
                 minimum: 1,
                 dependencies: ['poll']
             },
+            pollStrategy: {
+                title: 'Poll Strategy',
+                default: 'fixed',
+                enum: ['fixed', 'exponential', 'fibonacci'],
+                dependencies: ['poll']
+            },
+            maxInterval: {
+                title: 'Maximum Interval',
+                type: 'integer',
+                minimum: 1,
+                dependencies: ['poll']
+            },
+            jitter: {
+                title: 'Jitter (%)',
+                type: 'integer',
+                minimum: 0,
+                maximum: 100,
+                dependencies: ['poll']
+            },
             preview: {
                 title: 'Preview',
                 type: 'string',
@@ -206,12 +334,20 @@ var inputAlpaca = {
                     method: ['POST', 'PUT']
                 }
             },
+            compressionThreshold: {
+                inputType: 'number',
+                placeholder: 'Leave blank to send the body uncompressed',
+                dependencies: {
+                    method: ['POST', 'PUT']
+                }
+            },
             expectedStatuses: {
                 type: 'token',
                 placeholder: 'Leave blank to accept all status codes',
                 tokenfield: {
                     autocomplete: {
-                        source: ['100', '101', '102', '200', '201', '202', '203', '204', '205', '206', '207',
+                        source: ['1xx', '2xx', '3xx', '4xx', '5xx',
+                            '100', '101', '102', '200', '201', '202', '203', '204', '205', '206', '207',
                             '208', '226', '300', '301', '302', '303', '304', '305', '306', '307', '308',
                             '400', '401', '402', '403', '404', '405', '406', '407', '408', '409', '410',
                             '411', '412', '413', '414', '415', '416', '417', '421', '422', '423', '424',
@@ -224,7 +360,9 @@ var inputAlpaca = {
                 validator: function(callback) {
                     var value = this.getValue();
 
-                    var httpStatusRegex = /^([1-5][0-9][0-9](,\s?[1-5][0-9][0-9])*)?$/;
+                    // Status codes (200), ranges (200-204) and classes (2xx or 20x)
+                    var statusEntry = '(?:[1-5][0-9][0-9](?:-[1-5][0-9][0-9])?|[1-5][0-9x]x)';
+                    var httpStatusRegex = new RegExp('^(' + statusEntry + '(,\\s?' + statusEntry + ')*)?$');
 
                     if (!value) {
                         callback({
@@ -266,7 +404,7 @@ var inputAlpaca = {
                     } else {
                         callback({
                             status: false,
-                            message: 'Invalid http status code'
+                            message: 'Invalid http status code, range or class'
                         });
                     }
                 }
@@ -288,14 +426,153 @@ var inputAlpaca = {
                     }
                 }
             },
+            expectedJson: {
+                placeholder: 'eg: $.status == "DONE" && $.progress >= 100',
+                validator: function(callback) {
+                    var value = this.getValue();
+
+                    // One or more comparisons of a JSON path joined by && or ||, checked fully by the task
+                    var comparison = '\\$\\S*\\s*(?:exists|(?:==|!=|<=|>=|<|>|=~)\\s*(?:"(?:[^"\\\\]|\\\\.)*"|\'(?:[^\'\\\\]|\\\\.)*\'|[^\\s&|]+))';
+                    var conditionRegex = new RegExp('^\\s*' + comparison + '(?:\\s*(?:&&|\\|\\|)\\s*' + comparison + ')*\\s*$');
+
+                    if (!value || conditionRegex.test(value) || variableBindingRegex.test(value)) {
+                        callback({
+                            status: true
+                        });
+                    } else {
+                        callback({
+                            status: false,
+                            message: 'Invalid JSON condition'
+                        });
+                    }
+                }
+            },
+            onOversize: {
+                type: 'select',
+                removeDefaultNone: true,
+                sort: false,
+                optionLabels: ['Fail the request', 'Truncate the response body to 4MB']
+            },
+            extract: {
+                type: 'table',
+                showActionsColumn: false,
+                hideToolbar: false,
+                hideToolbarWithChildren: false,
+                items: {
+                    fields: {
+                        name: {
+                            placeholder: 'Name'
+                        },
+                        expression: {
+                            placeholder: 'eg: $.items[0].id or /task/@id'
+                        }
+                    }
+                },
+                toolbar: {
+                    actions: [{
+                        label: 'Add Value',
+                        action: 'add'
+                    }, {
+                        label: 'Remove Last Value',
+                        action: 'removeLast',
+                        iconClass: 'glyphicon glyphicon-minus-sign',
+                        click: function(key, action, itemIndex) {
+                            var value = this.getValue();
+                            if (value.length > 0) {
+                                value.pop();
+                                this.setValue(value);
+                            }
+                        }
+                    }]
+                }
+            },
+            omitResponseBody: {
+                type: 'checkbox',
+                rightLabel: 'Only output the extracted values, not the whole response body.'
+            },
+            coalesce: {
+                type: 'checkbox',
+                rightLabel: 'Wait for the response to an identical request already in flight instead of sending another.',
+                dependencies: {
+                    method: ['GET', 'HEAD', 'OPTIONS']
+                }
+            },
+            connectTimeout: {
+                inputType: 'number',
+                placeholder: 'Leave blank to wait up to 30 seconds'
+            },
+            readTimeout: {
+                inputType: 'number',
+                placeholder: 'Leave blank to wait up to 120 seconds for the server to respond'
+            },
+            retries: {
+                inputType: 'number',
+                placeholder: 'Leave blank to retry failed connections and 429, 502, 503 or 504 responses twice'
+            },
+            retryNonIdempotent: {
+                type: 'checkbox',
+                rightLabel: 'Also retry POST requests, which the server may carry out twice.',
+                dependencies: {
+                    method: ['POST']
+                }
+            },
+            paginate: {
+                type: 'select',
+                removeDefaultNone: true,
+                sort: false,
+                optionLabels: ['Single response', 'Follow the next link in the Link header',
+                    'Pass the cursor from each page to the next']
+            },
+            cursorPath: {
+                placeholder: 'eg: $.next_cursor',
+                dependencies: {
+                    paginate: 'cursor'
+                }
+            },
+            cursorParam: {
+                placeholder: 'eg: cursor',
+                dependencies: {
+                    paginate: 'cursor'
+                }
+            },
+            itemsPath: {
+                placeholder: 'Leave blank to collect each whole page, eg: $.items',
+                dependencies: {
+                    paginate: ['link', 'cursor']
+                }
+            },
+            pageLimit: {
+                inputType: 'number',
+                dependencies: {
+                    paginate: ['link', 'cursor']
+                }
+            },
+            prefetch: {
+                type: 'checkbox',
+                rightLabel: 'Request the next page while the current one is read.',
+                dependencies: {
+                    paginate: 'link'
+                }
+            },
             poll: {
                 type: 'checkbox',
                 rightLabel: 'Repeat until the expected response body is received.'
             },
+            waitMode: {
+                type: 'select',
+                removeDefaultNone: true,
+                sort: false,
+                optionLabels: ['Send the request again at an interval', 'Listen for server-sent events',
+                    'Long poll, the server holds each request until something changes'],
+                dependencies: {
+                    poll: true
+                }
+            },
             interval: {
                 inputType: 'number',
                 dependencies: {
-                    poll: true
+                    poll: true,
+                    waitMode: 'interval'
                 }
             },
             timeout: {
@@ -304,6 +581,30 @@ var inputAlpaca = {
                     poll: true
                 }
             },
+            pollStrategy: {
+                type: 'select',
+                removeDefaultNone: true,
+                sort: false,
+                optionLabels: ['Poll at a fixed interval', 'Double the interval after each poll',
+                    'Grow the interval as a Fibonacci sequence'],
+                dependencies: {
+                    poll: true
+                }
+            },
+            maxInterval: {
+                inputType: 'number',
+                placeholder: 'Leave blank to grow the interval up to the timeout',
+                dependencies: {
+                    poll: true
+                }
+            },
+            jitter: {
+                inputType: 'number',
+                placeholder: 'Leave blank to poll at exact intervals',
+                dependencies: {
+                    poll: true
+                }
+            },
             preview: {
                 placeholder: 'Click for preview',
                 type: 'textarea',
@@ -28,6 +28,19 @@ VRCS.view.alpaca.showForm({
                 },
                 password: {
                     title: 'Password'
+                },
+                truststore: {
+                    title: 'Trusted Certificates'
+                },
+                rateLimit: {
+                    title: 'Rate Limit (requests/sec)',
+                    type: 'integer',
+                    minimum: 0
+                },
+                maxConcurrency: {
+                    title: 'Max Concurrent Requests',
+                    type: 'integer',
+                    minimum: 0
                 }
             }
         },
@@ -44,6 +57,18 @@ VRCS.view.alpaca.showForm({
                 password: {
                     type: 'password',
                     placeholder: 'password'
+                },
+                truststore: {
+                    type: 'textarea',
+                    placeholder: 'PEM encoded certificates. Leave blank to trust all certificates'
+                },
+                rateLimit: {
+                    inputType: 'number',
+                    placeholder: 'Leave blank to send requests as fast as tasks make them'
+                },
+                maxConcurrency: {
+                    inputType: 'number',
+                    placeholder: 'Leave blank for no limit on requests in flight'
                 }
             }
         }
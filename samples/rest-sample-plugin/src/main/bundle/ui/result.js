@@ -50,6 +50,10 @@ var inputAlpaca = {
                 type: 'string',
                 dependencies: ['method']
             },
+            compressionThreshold: {
+                title: 'Compress Body Over (bytes)',
+                type: 'integer'
+            },
             expectedStatuses: {
                 title: 'Expected Status Codes',
                 type: 'string'
@@ -58,10 +62,87 @@ var inputAlpaca = {
                 title: 'Expected Response body',
                 type: 'string'
             },
+            expectedJson: {
+                title: 'Expected JSON Condition',
+                type: 'string'
+            },
+            onOversize: {
+                title: 'Response Over 4MB',
+                enum: ['fail', 'truncate']
+            },
+            extract: {
+                title: 'Extract Values',
+                type: 'array',
+                items: {
+                    type: 'object',
+                    properties: {
+                        name: {
+                            title: 'Name',
+                            type: 'string'
+                        },
+                        expression: {
+                            title: 'JSON Path or XPath',
+                            type: 'string'
+                        }
+                    }
+                }
+            },
+            omitResponseBody: {
+                title: 'Omit Response Body',
+                type: 'boolean'
+            },
+            coalesce: {
+                title: 'Share Identical Requests',
+                type: 'boolean'
+            },
+            connectTimeout: {
+                title: 'Connect Timeout (sec)',
+                type: 'integer'
+            },
+            readTimeout: {
+                title: 'Read Timeout (sec)',
+                type: 'integer'
+            },
+            retries: {
+                title: 'Retries',
+                type: 'integer'
+            },
+            retryNonIdempotent: {
+                title: 'Retry POST Requests',
+                type: 'boolean'
+            },
+            paginate: {
+                title: 'Pagination',
+                enum: ['none', 'link', 'cursor']
+            },
+            cursorPath: {
+                title: 'Cursor Path',
+                type: 'string'
+            },
+            cursorParam: {
+                title: 'Cursor Query Parameter',
+                type: 'string'
+            },
+            itemsPath: {
+                title: 'Items Path',
+                type: 'string'
+            },
+            pageLimit: {
+                title: 'Page Limit',
+                type: 'integer'
+            },
+            prefetch: {
+                title: 'Prefetch',
+                type: 'boolean'
+            },
             poll: {
                 title: 'Poll',
                 type: 'boolean'
             },
+            waitMode: {
+                title: 'Wait Mode',
+                enum: ['interval', 'sse', 'longpoll']
+            },
             interval: {
                 title: 'Interval',
                 type: 'integer'
@@ -69,6 +150,18 @@ var inputAlpaca = {
             timeout: {
                 title: 'Timeout',
                 type: 'integer'
+            },
+            pollStrategy: {
+                title: 'Poll Strategy',
+                enum: ['fixed', 'exponential', 'fibonacci']
+            },
+            maxInterval: {
+                title: 'Maximum Interval',
+                type: 'integer'
+            },
+            jitter: {
+                title: 'Jitter (%)',
+                type: 'integer'
             }
         }
     },
@@ -92,21 +185,88 @@ var inputAlpaca = {
                     method: ['POST', 'PUT']
                 }
             },
+            compressionThreshold: {
+                inputType: 'number',
+                dependencies: {
+                    method: ['POST', 'PUT']
+                }
+            },
             expectedStatuses: {
                 type: 'token'
             },
             expectedResponse : {
                 type: 'text'
             },
+            expectedJson : {
+                type: 'text'
+            },
+            onOversize : {
+                type: 'text'
+            },
+            extract: {
+                type: 'table'
+            },
+            omitResponseBody : {
+                type: 'checkbox',
+                rightLabel: 'Only output the extracted values, not the whole response body.'
+            },
+            coalesce : {
+                type: 'checkbox',
+                rightLabel: 'Wait for the response to an identical request already in flight instead of sending another.'
+            },
+            connectTimeout : {
+                inputType: 'number'
+            },
+            readTimeout : {
+                inputType: 'number'
+            },
+            retries : {
+                inputType: 'number'
+            },
+            retryNonIdempotent : {
+                type: 'checkbox',
+                rightLabel: 'Also retry POST requests, which the server may carry out twice.'
+            },
+            paginate : {
+                type: 'text'
+            },
+            cursorPath : {
+                type: 'text'
+            },
+            cursorParam : {
+                type: 'text'
+            },
+            itemsPath : {
+                type: 'text'
+            },
+            pageLimit : {
+                inputType: 'number'
+            },
+            prefetch : {
+                type: 'checkbox',
+                rightLabel: 'Request the next page while the current one is read.'
+            },
             poll : {
                 type: 'checkbox',
                 rightLabel: 'Repeat until the expected response body is received.'
             },
+            waitMode : {
+                type: 'text'
+            },
             interval : {
                 inputType: 'number'
             },
             timeout : {
                 inputType: 'number'
+            },
+            pollStrategy : {
+                type: 'text'
+            },
+            maxInterval : {
+                inputType: 'number'
+            },
+            jitter : {
+                inputType: 'number'
             }
         }
     }
@@ -155,7 +315,8 @@ var outputAlpaca = {
                          */
                         var data = this.data;
 
-                        if (data.name === 'responseHeaders' || data.name === 'responseBody') {
+                        if (data.name === 'responseHeaders' || data.name === 'responseBody'
+                                || data.name === 'extracted') {
                             return {
                                 options: {
                                     type: 'textarea'
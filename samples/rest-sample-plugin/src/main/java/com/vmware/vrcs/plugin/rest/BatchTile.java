@@ -0,0 +1,323 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import com.vmware.fms.tile.common.TileExecutable;
+import com.vmware.fms.tile.common.TileExecutableRequest;
+import com.vmware.fms.tile.common.TileExecutableResponse;
+import com.vmware.fms.tile.common.TileProperties;
+import com.vmware.vrcs.plugin.rest.utils.JsonWriter;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTRequest;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTResponse;
+
+public class BatchTile implements TileExecutable {
+
+    private static final Logger logger = Logger.getLogger(BatchTile.class.getName());
+
+    private static final String BATCH_PARAMETERS_FAIL = "Batch request failed because no requests were specified";
+    private static final String BATCH_FAIL_FAST = "Batch request stopped after request %d failed: %s";
+    private static final String BATCH_FAIL = "Batch request failed because %d of %d requests did not succeed";
+    private static final String BATCH_TIMEOUT_FAIL = "Batch request timed out after %d sec";
+    private static final String BATCH_INTERRUPTED_FAIL = "Batch request was interrupted";
+    private static final String UNEXPECTED_STATUS_ERROR = "Request failed with response code: ";
+    private static final String SKIPPED_ERROR = "Request was not sent";
+    private static final String CANCELLED_ERROR = "Request was cancelled";
+    private static final String RESULTS_EXCEEDED_FAIL = "Batch results exceed 4MB, the headers and body of %d of %d requests were left out";
+
+    private static final int DEFAULT_CONCURRENCY = 8;
+    private static final int FIRST_ERROR_STATUS = 400;
+
+    // The results become a single output, which is limited to 4MB like any other output
+    private static final int MAX_RESULTS_BYTES = 4 * 1024 * 1024;
+
+    public void handleExecute(TileExecutableRequest request, TileExecutableResponse response) {
+        // A batch runs all of its requests within a single synchronous execution. The requests share the endpoint and
+        // are sent through the asynchronous RESTClient with at most "concurrency" of them in flight at any time.
+        logger.info("Executing REST batch task.");
+
+        // Get the endpoint properties from the request.
+        TileProperties endpointProperties = request.getInputProperties().getAsProperties("endpoint");
+        String endpointUrl = endpointProperties.getAsString("url");
+        String endpointUsername = endpointProperties.getAsString("username", "");
+        String endpointPassword = endpointProperties.getAsString("password", "");
+        String endpointTruststore = endpointProperties.getAsString("truststore", "");
+        int endpointRateLimit = endpointProperties.getAsInteger("rateLimit", 0);
+        int endpointMaxConcurrency = endpointProperties.getAsInteger("maxConcurrency", 0);
+
+        // Get the batch properties from the request.
+        List<TileProperties> items = request.getInputProperties().getAsPropertiesArray("requests");
+        int concurrency = request.getInputProperties().getAsInteger("concurrency", DEFAULT_CONCURRENCY);
+        boolean isFailFast = request.getInputProperties().getAsBoolean("failFast", false);
+        boolean isOrdered = request.getInputProperties().getAsBoolean("ordered", true);
+        int timeout = request.getInputProperties().getAsInteger("timeout", 0);
+        String onOversize = request.getInputProperties().getAsString("onOversize", "fail");
+
+        if (items == null || items.isEmpty()) {
+            logger.severe(BATCH_PARAMETERS_FAIL);
+            response.setFailed(BATCH_PARAMETERS_FAIL);
+            return;
+        }
+
+        // Every batch shares the threads of the asynchronous RESTClient. Asking for more requests in flight than there
+        // are threads only fills the queue that all batches wait in, until requests are turned away instead of waiting.
+        if (concurrency > RESTClient.ASYNC_THREADS) {
+            logger.info(String.format("Limiting batch concurrency of %d to %d", concurrency, RESTClient.ASYNC_THREADS));
+        }
+        concurrency = Math.max(1, Math.min(concurrency, RESTClient.ASYNC_THREADS));
+
+        // Build every request up front so that a malformed entry fails the batch before anything is sent
+        List<RESTRequest> restRequests = new ArrayList<>(items.size());
+        try {
+            for (TileProperties item : items) {
+                List<TileProperties> headerProperties = item.getAsPropertiesArray("headers");
+                Map<String, String> headers = headerProperties == null ? new LinkedHashMap<>()
+                        : headerProperties.stream().collect(Collectors.toMap(
+                                headerProperty -> headerProperty.getAsString("name"),
+                                headerProperty -> headerProperty.getAsString("value")));
+                restRequests.add(new RESTRequest()
+                        .setEndpointUrl(endpointUrl)
+                        .setEndpointCredentials(endpointUsername, endpointPassword)
+                        .setEndpointTruststore(endpointTruststore)
+                        .setRateLimit(endpointRateLimit)
+                        .setMaxConcurrency(endpointMaxConcurrency)
+                        .setPath(item.getAsString("path"))
+                        .setHeaders(headers)
+                        .setMethod(item.getAsString("method", "GET"))
+                        .setBody(item.getAsString("body", ""))
+                        .setOnOversize(onOversize)
+                        .setTimeout((int) TimeUnit.SECONDS.toMillis(timeout)));
+            }
+        } catch (RESTException ex) {
+            logger.info("Failed to prepare REST batch task.");
+            response.setFailed(ex.getMessage());
+            return;
+        }
+
+        // Run the batch. Results are kept by index so that they can be reported in input order, and the completion
+        // order is recorded for batches that do not need ordering.
+        int count = restRequests.size();
+        List<Map<String, Object>> results = newResults(items);
+        Queue<Integer> completionOrder = new ConcurrentLinkedQueue<>();
+        List<CompletableFuture<RESTResponse>> futures = new ArrayList<>(count);
+        List<CompletableFuture<?>> settled = new ArrayList<>(count);
+        CompletableFuture<Integer> firstFailure = new CompletableFuture<>();
+        Semaphore permits = new Semaphore(concurrency);
+        long deadlineNanos = timeout > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout) : Long.MAX_VALUE;
+        String failureMessage = null;
+
+        try {
+            for (int i = 0; i < count; i++) {
+                if (!permits.tryAcquire(remainingNanos(deadlineNanos), TimeUnit.NANOSECONDS)) {
+                    throw new TimeoutException();
+                }
+                if (isFailFast && firstFailure.isDone()) {
+                    permits.release();
+                    break;
+                }
+                int index = i;
+                long startNanos = System.nanoTime();
+                CompletableFuture<RESTResponse> future = RESTClient.executeAsync(restRequests.get(index));
+                futures.add(future);
+                settled.add(future.handle((restResponse, error) -> {
+                    // Record the outcome before handing back the permit so that fail fast sees it before the next send
+                    try {
+                        if (!(error instanceof CancellationException)) {
+                            completionOrder.add(index);
+                            if (!recordResult(results.get(index), restResponse, error, startNanos)) {
+                                firstFailure.complete(index);
+                            }
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+
+            // Wait for the requests in flight, or only until the first failure when failing fast
+            CompletableFuture<?> allDone = CompletableFuture.allOf(settled.toArray(new CompletableFuture<?>[0]));
+            CompletableFuture<?> done = isFailFast ? CompletableFuture.anyOf(allDone, firstFailure) : allDone;
+            done.get(remainingNanos(deadlineNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            failureMessage = String.format(BATCH_TIMEOUT_FAIL, timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failureMessage = BATCH_INTERRUPTED_FAIL;
+        } catch (ExecutionException e) {
+            // Failures are recorded per request and the settled futures never complete exceptionally
+        }
+
+        // Stop whatever is still outstanding. Requests that already hold a connection run on in the background until
+        // they finish or reach the batch timeout, but their results are no longer reported.
+        futures.forEach(future -> future.cancel(false));
+
+        // Count the outcomes and report the results
+        int succeeded = 0;
+        int failed = 0;
+        int skipped = 0;
+        for (Map<String, Object> result : results) {
+            synchronized (result) {
+                if (!result.containsKey("succeeded")) {
+                    result.put("succeeded", false);
+                    result.put("error", (Integer) result.get("index") < futures.size() ? CANCELLED_ERROR : SKIPPED_ERROR);
+                    skipped++;
+                } else if ((Boolean) result.get("succeeded")) {
+                    succeeded++;
+                } else {
+                    failed++;
+                }
+            }
+        }
+
+        List<Map<String, Object>> orderedResults = new ArrayList<>(count);
+        if (isOrdered) {
+            orderedResults.addAll(results);
+        } else {
+            // Completed requests in the order they finished, followed by the ones that never finished
+            boolean[] added = new boolean[count];
+            for (Integer index : completionOrder) {
+                if (!added[index]) {
+                    added[index] = true;
+                    orderedResults.add(results.get(index));
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if (!added[i]) {
+                    orderedResults.add(results.get(i));
+                }
+            }
+        }
+
+        int truncatedCount = limitResults(orderedResults);
+        response.getOutputProperties().setJsonArray("results", orderedResults);
+        response.getOutputProperties().setBoolean("resultsTruncated", truncatedCount > 0);
+        response.getOutputProperties().setInteger("succeeded", succeeded);
+        response.getOutputProperties().setInteger("failed", failed);
+        response.getOutputProperties().setInteger("skipped", skipped);
+        logger.info(String.format("Batch finished with %d succeeded, %d failed and %d skipped", succeeded, failed, skipped));
+
+        // Decide the outcome of the batch. A timeout wins, then the first failure when failing fast, then any failure.
+        if (failureMessage == null && isFailFast && firstFailure.isDone()) {
+            int index = firstFailure.join();
+            failureMessage = String.format(BATCH_FAIL_FAST, index, results.get(index).get("error"));
+        } else if (failureMessage == null && failed + skipped > 0) {
+            failureMessage = String.format(BATCH_FAIL, failed + skipped, count);
+        } else if (failureMessage == null && truncatedCount > 0 && !"truncate".equalsIgnoreCase(onOversize)) {
+            failureMessage = String.format(RESULTS_EXCEEDED_FAIL, truncatedCount, count);
+        }
+        if (truncatedCount > 0) {
+            logger.warning(String.format("Batch results exceeded 4MB and %d of them were truncated", truncatedCount));
+        }
+
+        if (failureMessage != null) {
+            logger.severe(failureMessage);
+            response.setFailed(failureMessage);
+        } else {
+            logger.info("Batch request completed successfully");
+        }
+    }
+
+    private static List<Map<String, Object>> newResults(List<TileProperties> items) {
+        List<Map<String, Object>> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("index", i);
+            result.put("path", items.get(i).getAsString("path"));
+            result.put("method", items.get(i).getAsString("method", "GET"));
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static boolean recordResult(Map<String, Object> result, RESTResponse restResponse, Throwable error,
+            long startNanos) {
+        // A request succeeds when it returned a status below 400 and the body could be read
+        boolean isSucceeded = false;
+        synchronized (result) {
+            if (result.containsKey("succeeded")) {
+                // The batch is already over and has reported this request as cancelled
+                return true;
+            }
+            result.put("durationMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                result.put("error", cause.getMessage());
+            } else {
+                result.put("status", restResponse.getStatus());
+                result.put("headers", restResponse.getHeaders());
+                try {
+                    result.put("body", restResponse.getBody());
+                    if (restResponse.isTruncated()) {
+                        result.put("truncated", true);
+                    }
+                    isSucceeded = restResponse.getStatus() < FIRST_ERROR_STATUS;
+                    if (!isSucceeded) {
+                        result.put("error", UNEXPECTED_STATUS_ERROR + restResponse.getStatus());
+                    }
+                } catch (RESTException e) {
+                    result.put("error", e.getMessage());
+                }
+            }
+            result.put("succeeded", isSucceeded);
+        }
+        return isSucceeded;
+    }
+
+    private static int limitResults(List<Map<String, Object>> results) {
+        // Results are kept whole while they fit. Once the total would exceed the limit the headers and body of the rest
+        // are left out, so that every request is still reported with its status, and any that would not fit even
+        // without them are dropped. Returns how many results were cut short or dropped.
+        long totalBytes = 2;
+        int truncatedCount = 0;
+        for (int i = 0; i < results.size(); i++) {
+            Map<String, Object> result = results.get(i);
+            long resultBytes = JsonWriter.write(result).getBytes(StandardCharsets.UTF_8).length + (i == 0 ? 0 : 1);
+            if (totalBytes + resultBytes > MAX_RESULTS_BYTES) {
+                truncatedCount++;
+                result.remove("headers");
+                result.remove("body");
+                result.put("truncated", true);
+                resultBytes = JsonWriter.write(result).getBytes(StandardCharsets.UTF_8).length + (i == 0 ? 0 : 1);
+                if (totalBytes + resultBytes > MAX_RESULTS_BYTES) {
+                    truncatedCount += results.size() - i - 1;
+                    results.subList(i, results.size()).clear();
+                    break;
+                }
+            }
+            totalBytes += resultBytes;
+        }
+        return truncatedCount;
+    }
+
+    private static long remainingNanos(long deadlineNanos) {
+        return deadlineNanos == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadlineNanos - System.nanoTime());
+    }
+}
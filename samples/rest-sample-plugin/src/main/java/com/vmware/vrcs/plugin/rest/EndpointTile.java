@@ -12,6 +12,8 @@
 package com.vmware.vrcs.plugin.rest;
 
 import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import com.vmware.fms.tile.common.TileExecutable;
@@ -22,6 +24,7 @@ import com.vmware.vrcs.plugin.rest.utils.RESTClient;
 import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
 import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTRequest;
 import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTResponse;
+import com.vmware.vrcs.plugin.rest.utils.ResponseCache;
 
 public class EndpointTile implements TileExecutable {
 
@@ -32,6 +35,28 @@ public class EndpointTile implements TileExecutable {
     private static final String AUTH_MALFORMED_ERROR = "REST Endpoint username or password is empty.";
     private static final String UNAUTHORIZED_ERROR = "REST Endpoint credentials are invalid. (Credentials are passed using basic auth)";
 
+    // How long a successful validation is remembered for, 0 validates every time
+    private static final String VALIDATION_CACHE_TTL_PROPERTY = "com.vmware.vrcs.plugin.rest.validationCacheTtlSeconds";
+    private static final long VALIDATION_CACHE_TTL_SECONDS = Long.getLong(VALIDATION_CACHE_TTL_PROPERTY, 300L);
+    private static final int VALIDATION_CACHE_SIZE = 1024;
+    private static final String VALID = "valid";
+
+    // Endpoints that validated successfully, keyed by a hash of the URL, credentials and truststore. Endpoints are
+    // validated again each time they are saved, which is slow against management APIs that take seconds to answer.
+    private static final ResponseCache validations = new ResponseCache(VALIDATION_CACHE_SIZE,
+            VALIDATION_CACHE_SIZE * VALID.length(), TimeUnit.SECONDS.toMillis(VALIDATION_CACHE_TTL_SECONDS));
+
+    private final boolean isLocalhostAllowed;
+
+    public EndpointTile() {
+        this(false);
+    }
+
+    // Tests validate endpoints against a mock server running on this machine
+    EndpointTile(boolean isLocalhostAllowed) {
+        this.isLocalhostAllowed = isLocalhostAllowed;
+    }
+
     public void handleExecute(TileExecutableRequest request, TileExecutableResponse response) {
         // Endpoint tiles validate all the properties of an endpoint. If all properties are valid the tile succeeds and
         // has no output properties. In the case of an issue with an endpoint property, the tile should fail by calling
@@ -43,6 +68,7 @@ public class EndpointTile implements TileExecutable {
         String endpointUrl = endpointProperties.getAsString("url");
         String endpointUsername = endpointProperties.getAsString("username", "");
         String endpointPassword = endpointProperties.getAsString("password", "");
+        String endpointTruststore = endpointProperties.getAsString("truststore", "");
 
         // Validate the endpoint properties
         if (endpointUrl == null || endpointUrl.isEmpty()) {
@@ -51,7 +77,8 @@ public class EndpointTile implements TileExecutable {
             return;
         }
 
-        if (endpointUrl.contains("localhost") || endpointUrl.contains("127.0.0.1") || endpointUrl.contains("::1")) {
+        if (!this.isLocalhostAllowed && (endpointUrl.contains("localhost") || endpointUrl.contains("127.0.0.1")
+                || endpointUrl.contains("::1"))) {
             logger.severe(LOCALHOST_ERROR);
             response.setFailed(LOCALHOST_ERROR);
             return;
@@ -64,11 +91,30 @@ public class EndpointTile implements TileExecutable {
         }
 
 
+        String validationKey = ResponseCache.getKey(endpointUrl, endpointUsername, endpointPassword, endpointTruststore,
+                "", "", Collections.emptyMap(), "");
+        if (validations.get(validationKey) != null) {
+            logger.info("REST endpoint was validated recently.");
+            return;
+        }
+
         try {
-            // Execute the request as a GET (default)
+            // Probe the endpoint with a HEAD request since only the status is needed. Servers that do not support HEAD
+            // are asked with a GET instead, but its body is discarded rather than read.
             RESTResponse restResponse = RESTClient.execute(new RESTRequest()
                     .setEndpointUrl(endpointUrl)
-                    .setEndpointCredentials(endpointUsername, endpointPassword));
+                    .setEndpointCredentials(endpointUsername, endpointPassword)
+                    .setEndpointTruststore(endpointTruststore)
+                    .setMethod("HEAD"));
+            if (restResponse.getStatus() == HttpURLConnection.HTTP_BAD_METHOD
+                    || restResponse.getStatus() == HttpURLConnection.HTTP_NOT_IMPLEMENTED) {
+                logger.info("REST endpoint does not support HEAD, validating with GET");
+                restResponse = RESTClient.execute(new RESTRequest()
+                        .setEndpointUrl(endpointUrl)
+                        .setEndpointCredentials(endpointUsername, endpointPassword)
+                        .setEndpointTruststore(endpointTruststore)
+                        .setBodyConsumer(reader -> false));
+            }
 
             // Get the response status to ensure the server was reachable
             Integer responseCode = restResponse.getStatus();
@@ -79,7 +125,9 @@ public class EndpointTile implements TileExecutable {
             if (isUsingBasicAuth && responseCode == HttpURLConnection.HTTP_UNAUTHORIZED) {
                 logger.severe(UNAUTHORIZED_ERROR);
                 response.setFailed(UNAUTHORIZED_ERROR);
+                return;
             }
+            validations.put(validationKey, VALID, null);
         } catch (RESTException ex) {
             // Any unhandled exceptions will also result in an automatic failure of the tile
             logger.info("Failed to validate REST endpoint.");
@@ -11,6 +11,7 @@
 
 package com.vmware.vrcs.plugin.rest;
 
+import java.net.HttpURLConnection;
 import java.util.Map;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -23,6 +24,7 @@ import com.vmware.vrcs.plugin.rest.utils.RESTClient;
 import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
 import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTRequest;
 import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTResponse;
+import com.vmware.vrcs.plugin.rest.utils.ResponseCache;
 
 public class PreviewTile implements TileExecutable {
 
@@ -39,6 +41,7 @@ public class PreviewTile implements TileExecutable {
         String endpointUrl = endpointProperties.getAsString("url");
         String endpointUsername = endpointProperties.getAsString("username", "");
         String endpointPassword = endpointProperties.getAsString("password", "");
+        String endpointTruststore = endpointProperties.getAsString("truststore", "");
 
         // Get the REST properties from the request. Custom datatypes are stored as a TileProperties object which
         // represent the underlying JSON object. In this case we retrieve a list of TileProperties objects
@@ -56,11 +59,24 @@ public class PreviewTile implements TileExecutable {
         String method = request.getInputProperties().getAsString("method");
         String body = request.getInputProperties().getAsString("body", "");
 
+        // The config UI asks for the same preview over and over while a task is being edited, so serve a recent preview
+        // of an identical request from the cache rather than sending it again
+        ResponseCache cache = ResponseCache.getShared();
+        String cacheKey = ResponseCache.getKey(endpointUrl, endpointUsername, endpointPassword, endpointTruststore,
+                method, path, headers, body);
+        String cachedPreview = cache.get(cacheKey);
+        if (cachedPreview != null) {
+            logger.fine("Serving REST preview from cache " + cache);
+            response.getOutputProperties().setString("responsePreview", cachedPreview);
+            return;
+        }
+
         try {
             // Execute the request using the given input properties
             RESTResponse restResponse = RESTClient.execute(new RESTRequest()
                     .setEndpointUrl(endpointUrl)
                     .setEndpointCredentials(endpointUsername, endpointPassword)
+                    .setEndpointTruststore(endpointTruststore)
                     .setPath(path)
                     .setHeaders(headers)
                     .setMethod(method)
@@ -86,7 +102,13 @@ public class PreviewTile implements TileExecutable {
             responsePreviewBuilder.append(restResponse.getBody());
 
             //Set the responsePreview output as a String
-            response.getOutputProperties().setString("responsePreview", responsePreviewBuilder.toString());
+            String responsePreview = responsePreviewBuilder.toString();
+            response.getOutputProperties().setString("responsePreview", responsePreview);
+
+            // Server errors are usually transient so only cache the preview of a response the server meant to give
+            if (restResponse.getStatus() < HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                cache.put(cacheKey, responsePreview, restResponse.getHeader("Cache-Control"));
+            }
         } catch (RESTException ex) {
             logger.info("Failed to get REST preview.");
             response.setFailed(ex.getMessage());
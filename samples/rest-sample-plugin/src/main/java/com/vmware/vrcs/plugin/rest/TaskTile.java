@@ -11,19 +11,32 @@
 
 package com.vmware.vrcs.plugin.rest;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import com.vmware.fms.tile.common.TileExecutable;
 import com.vmware.fms.tile.common.TileExecutableRequest;
 import com.vmware.fms.tile.common.TileExecutableResponse;
 import com.vmware.fms.tile.common.TileProperties;
+import com.vmware.vrcs.plugin.rest.utils.CircuitBreaker;
+import com.vmware.vrcs.plugin.rest.utils.JsonCondition;
+import com.vmware.vrcs.plugin.rest.utils.Metrics;
+import com.vmware.vrcs.plugin.rest.utils.Paginator;
+import com.vmware.vrcs.plugin.rest.utils.PatternCache;
+import com.vmware.vrcs.plugin.rest.utils.PollingPolicy;
 import com.vmware.vrcs.plugin.rest.utils.RESTClient;
 import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
 import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTRequest;
 import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTResponse;
+import com.vmware.vrcs.plugin.rest.utils.ResponseExtractor;
+import com.vmware.vrcs.plugin.rest.utils.RetryPolicy;
+import com.vmware.vrcs.plugin.rest.utils.StatusSet;
 
 public class TaskTile implements TileExecutable {
 
@@ -32,10 +45,42 @@ public class TaskTile implements TileExecutable {
     private static final String ASYNC_PROGRESS_CODE = "Polling";
     private static final String ASYNC_PROGRESS_MESSAGE = "Asynchronous request has been polling for %d sec";
     private static final String ASYNC_TIMEOUT_FAIL = "Asynchronous request timed out after %d sec";
-    private static final String ASYNC_PARAMETERS_FAIL = "Asynchronous request failed because interval, timeout and expected response must be specified";
+    private static final String ASYNC_PARAMETERS_FAIL = "Asynchronous request failed because interval, timeout and expected response or JSON condition must be specified";
     private static final String EXPECTED_RESPONSE_FAIL = "Request failed with unexpected response";
+    private static final String WAIT_MODE_FAIL = "Wait mode must be one of interval, sse or longpoll";
+    private static final String EXTRACT_FAIL = "Unable to extract values from response: ";
+    private static final String PAGINATE_POLL_FAIL = "Pagination cannot be combined with polling";
+
+    private static final String WAIT_MODE_INTERVAL = "interval";
+    private static final String WAIT_MODE_SSE = "sse";
+    private static final String WAIT_MODE_LONGPOLL = "longpoll";
+
+    // The longest a single execution holds an event stream open before handing back to the scheduler and reconnecting
+    private static final int STREAM_WINDOW_SECONDS = 60;
+
+    private static final int DEFAULT_PAGE_LIMIT = 10;
+    private static final int DEFAULT_RETRIES = 2;
 
     public void handleExecute(TileExecutableRequest request, TileExecutableResponse response) {
+        // Time each call, and once a polling run is over record how many polls it took
+        Metrics metrics = RESTClient.getMetrics();
+        long start = System.nanoTime();
+        try {
+            execute(request, response);
+        } finally {
+            metrics.getTimer("task.execution").record(System.nanoTime() - start);
+            boolean isDone = response.isCompleted() || response.isFailed();
+            Integer attempts = response.getOutputProperties().getAsInteger("__attempts");
+            if (isDone && attempts != null) {
+                metrics.getHistogram("task.pollIterations").record(attempts);
+            }
+            if (isDone) {
+                metrics.getCounter(response.isFailed() ? "task.failed" : "task.completed").increment();
+            }
+        }
+    }
+
+    private void execute(TileExecutableRequest request, TileExecutableResponse response) {
         // Execution tiles are the ones that run when a pipeline containing a task backed by your plugin executes. These
         // tiles can operate synchronously like the EndpointTile or PreviewTile or they can operate asynchronously. In
         // case of an asynchronous execution, this method is called multiple times are an interval that can be specified
@@ -47,6 +92,9 @@ public class TaskTile implements TileExecutable {
         String endpointUrl = endpointProperties.getAsString("url");
         String endpointUsername = endpointProperties.getAsString("username", "");
         String endpointPassword = endpointProperties.getAsString("password", "");
+        String endpointTruststore = endpointProperties.getAsString("truststore", "");
+        int endpointRateLimit = endpointProperties.getAsInteger("rateLimit", 0);
+        int endpointMaxConcurrency = endpointProperties.getAsInteger("maxConcurrency", 0);
 
         // Get the REST properties from the request.
         Map<String, String> headers = request.getInputProperties().getAsPropertiesArray("headers").stream().collect(Collectors.toMap(
@@ -57,17 +105,117 @@ public class TaskTile implements TileExecutable {
         String body = request.getInputProperties().getAsString("body", "");
         String expectedStatuses = request.getInputProperties().getAsString("expectedStatuses", "");
         String expectedResponse = request.getInputProperties().getAsString("expectedResponse", "");
+        String expectedJson = request.getInputProperties().getAsString("expectedJson", "");
+        String onOversize = request.getInputProperties().getAsString("onOversize", "fail");
+        int compressionThreshold = request.getInputProperties().getAsInteger("compressionThreshold", 0);
+        boolean isOmitResponseBody = request.getInputProperties().getAsBoolean("omitResponseBody", false);
+        List<TileProperties> extractProperties = request.getInputProperties().getAsPropertiesArray("extract");
+        boolean isCoalesce = request.getInputProperties().getAsBoolean("coalesce", false);
+        int connectTimeout = request.getInputProperties().getAsInteger("connectTimeout", 0);
+        int readTimeout = request.getInputProperties().getAsInteger("readTimeout", 0);
+        int retries = request.getInputProperties().getAsInteger("retries", DEFAULT_RETRIES);
+        boolean isRetryNonIdempotent = request.getInputProperties().getAsBoolean("retryNonIdempotent", false);
+
+        // Get the pagination properties from the request
+        String paginate = request.getInputProperties().getAsString("paginate", "none");
+        String cursorPath = request.getInputProperties().getAsString("cursorPath", "");
+        String cursorParam = request.getInputProperties().getAsString("cursorParam", "");
+        String itemsPath = request.getInputProperties().getAsString("itemsPath", "");
+        int pageLimit = request.getInputProperties().getAsInteger("pageLimit", DEFAULT_PAGE_LIMIT);
+        boolean isPrefetch = request.getInputProperties().getAsBoolean("prefetch", false);
 
         // Get the polling properties from the request. In the case of primitives other than strings there are
         // typed getters for Boolean, Integer and Number types where default values can also be provided.
         boolean isPoll = request.getInputProperties().getAsBoolean("poll", false);
         int interval = request.getInputProperties().getAsInteger("interval", 0);
         int timeout = request.getInputProperties().getAsInteger("timeout", 0);
+        String pollStrategy = request.getInputProperties().getAsString("pollStrategy", "fixed");
+        int maxInterval = request.getInputProperties().getAsInteger("maxInterval", 0);
+        int jitter = request.getInputProperties().getAsInteger("jitter", 0);
+        String waitMode = request.getInputProperties().getAsString("waitMode", WAIT_MODE_INTERVAL).toLowerCase();
+
+        // Instead of asking again at an interval, a polling request can wait for the server to tell it about changes,
+        // either over a stream of server-sent events or with requests the server holds until something changes
+        if (!waitMode.equals(WAIT_MODE_INTERVAL) && !waitMode.equals(WAIT_MODE_SSE) && !waitMode.equals(WAIT_MODE_LONGPOLL)) {
+            logger.severe(WAIT_MODE_FAIL);
+            response.setFailed(WAIT_MODE_FAIL);
+            return;
+        }
+        boolean isWaitForServer = isPoll && !waitMode.equals(WAIT_MODE_INTERVAL);
+
+        // Parse the expected status codes into a set. A polling request saves the parsed set in its hidden execution
+        // state on the first execution so that the following executions need not parse it again.
+        StatusSet expectedStatusSet;
+        List<Long> expectedStatusMask = isPoll && !request.isFirstExecution()
+                ? response.getOutputProperties().getAsIntegerArray("__expectedStatusMask") : null;
+        if (expectedStatusMask != null) {
+            expectedStatusSet = StatusSet.fromWords(expectedStatusMask);
+        } else {
+            try {
+                expectedStatusSet = StatusSet.parse(expectedStatuses);
+            } catch (RESTException ex) {
+                response.setFailed(ex.getMessage());
+                return;
+            }
+        }
+
+        // The expected JSON condition checks fields of the response rather than matching its text
+        JsonCondition jsonCondition = null;
+        if (!expectedJson.trim().isEmpty()) {
+            try {
+                jsonCondition = JsonCondition.parse(expectedJson);
+            } catch (RESTException ex) {
+                response.setFailed(ex.getMessage());
+                return;
+            }
+        }
+
+        // A paged resource can be collected into one response by following the pages on from the first one. Each
+        // execution collects all of the pages, so this does not mix with polling.
+        Paginator paginator;
+        try {
+            paginator = new Paginator(paginate, cursorPath, cursorParam, itemsPath, pageLimit, isPrefetch);
+        } catch (RESTException ex) {
+            response.setFailed(ex.getMessage());
+            return;
+        }
+        if (paginator.isEnabled() && isPoll) {
+            logger.severe(PAGINATE_POLL_FAIL);
+            response.setFailed(PAGINATE_POLL_FAIL);
+            return;
+        }
+
+        // Named values are picked out of the response with JSON paths or XPath expressions so that a pipeline which
+        // only needs a few fields does not have to carry the whole body around
+        ResponseExtractor extractor = null;
+        if (extractProperties != null && !extractProperties.isEmpty()) {
+            Map<String, String> expressions = new LinkedHashMap<>();
+            extractProperties.forEach(extractProperty -> expressions.put(
+                    extractProperty.getAsString("name"), extractProperty.getAsString("expression")));
+            try {
+                extractor = new ResponseExtractor(expressions);
+            } catch (RESTException ex) {
+                response.setFailed(ex.getMessage());
+                return;
+            }
+        }
+
+        // The polling policy decides how the interval grows between polls, up to maxInterval or else the timeout
+        PollingPolicy pollingPolicy = null;
+        if (isPoll) {
+            try {
+                pollingPolicy = new PollingPolicy(pollStrategy, interval, maxInterval > 0 ? maxInterval : timeout, jitter);
+            } catch (RESTException ex) {
+                response.setFailed(ex.getMessage());
+                return;
+            }
+        }
 
         // If this is a poll request and it is the first time the tile is executing we need to set up for asynchronous execution
         if (isPoll && request.isFirstExecution()) {
             // Validate that all the information needed for an asynchronous execution is present.
-            if (interval == 0 || timeout == 0 || expectedResponse.isEmpty()) {
+            // The interval is not needed when waiting for the server.
+            if ((interval == 0 && !isWaitForServer) || timeout == 0 || (expectedResponse.isEmpty() && jsonCondition == null)) {
                 // If not, fail the request by calling setFailed with the error message and returning
                 logger.severe(ASYNC_PARAMETERS_FAIL);
                 response.setFailed(ASYNC_PARAMETERS_FAIL);
@@ -82,46 +230,183 @@ public class TaskTile implements TileExecutable {
             // 3. Mark the request as not completed so that we will be called back after the execution interval.
             //    This must be done every time we want to be called back otherwise the execution is considered completed.
             response.getOutputProperties().setInteger("__attempts", 1);
-            response.setExecutionIntervalSeconds(interval);
-            response.setCompleted(false);
-            logger.info(String.format("Starting asynchronous request with a pollInterval of %s and a timeout of %s",
-                    interval, timeout));
-            return;
+            response.getOutputProperties().setIntegerArray("__expectedStatusMask", expectedStatusSet.toWords());
+            response.getOutputProperties().setInteger("__interval", interval);
+            response.getOutputProperties().setInteger("__previousInterval", 0);
+            response.getOutputProperties().setString("__lastEventId", "");
+            if (isWaitForServer) {
+                // Start waiting for the server straight away rather than after the first interval
+                logger.info(String.format("Starting asynchronous %s request with a timeout of %s", waitMode, timeout));
+            } else {
+                response.setExecutionIntervalSeconds(pollingPolicy.applyJitter(interval));
+                response.setCompleted(false);
+                logger.info(String.format("Starting asynchronous request with a pollInterval of %s and a timeout of %s",
+                        interval, timeout));
+                return;
+            }
+        }
+
+        // A polling request asks the server to only send the response if it changed since the previous poll, using the
+        // validators saved in the hidden execution state. Only safe methods can be made conditional this way.
+        boolean isConditional = false;
+        if (isPoll && !waitMode.equals(WAIT_MODE_SSE) && ("GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method))) {
+            String etag = response.getOutputProperties().getAsString("__etag", "");
+            String lastModified = response.getOutputProperties().getAsString("__lastModified", "");
+            if (!etag.isEmpty() && !RESTRequest.hasHeader(headers, "If-None-Match")) {
+                headers.put("If-None-Match", etag);
+                isConditional = true;
+            }
+            if (!lastModified.isEmpty() && !RESTRequest.hasHeader(headers, "If-Modified-Since")) {
+                headers.put("If-Modified-Since", lastModified);
+                isConditional = true;
+            }
+        }
+
+        // An event stream resumes after the last event seen by the previous execution
+        String lastEventId = isPoll ? response.getOutputProperties().getAsString("__lastEventId", "") : "";
+        if (waitMode.equals(WAIT_MODE_SSE) && !lastEventId.isEmpty()) {
+            headers.put("Last-Event-ID", lastEventId);
         }
 
         try {
             // Execute the request using the given input properties
-            RESTResponse restResponse = RESTClient.execute(new RESTRequest()
+            RESTRequest restRequest = new RESTRequest()
                     .setEndpointUrl(endpointUrl)
                     .setEndpointCredentials(endpointUsername, endpointPassword)
+                    .setEndpointTruststore(endpointTruststore)
+                    .setRateLimit(endpointRateLimit)
+                    .setMaxConcurrency(endpointMaxConcurrency)
                     .setPath(path)
                     .setHeaders(headers)
                     .setMethod(method)
-                    .setBody(body));
+                    .setBody(body)
+                    .setCompressionThreshold(compressionThreshold)
+                    .setOnOversize(onOversize)
+                    .setCoalesce(isCoalesce)
+                    .setRetryPolicy(retries > 0 ? new RetryPolicy(retries, RetryPolicy.DEFAULT_BASE_DELAY_MILLIS,
+                            RetryPolicy.DEFAULT_MAX_DELAY_MILLIS, isRetryNonIdempotent) : null);
 
+            // Timeouts left blank keep the defaults of the client. A polling request also has to finish within what
+            // is left of the polling timeout, so that one stuck request cannot hold the executor thread past it.
+            if (connectTimeout > 0) {
+                restRequest.setConnectTimeout(connectTimeout * 1000);
+            }
+            if (readTimeout > 0) {
+                restRequest.setReadTimeout(readTimeout * 1000);
+            }
+            int remainingSeconds = Math.max(1, timeout - request.getDurationSeconds());
+            if (isPoll) {
+                restRequest.setTimeout(remainingSeconds * 1000);
+            }
 
-            // Set status code output as an Integer
-            int responseStatus = restResponse.getStatus();
-            response.getOutputProperties().setInteger("responseStatus", responseStatus);
+            // When nothing needs the body text, the values are extracted or the JSON condition is checked while the
+            // body streams in, so that it is never held in memory and is not subject to the 4MB limit. The condition
+            // stops reading as soon as the fields it has seen decide the outcome. Only one of them can read the body
+            // as it streams in, so when both are used they work from the body text instead.
+            RESTClient.BodyConsumer streamConsumer = null;
+            if (isOmitResponseBody && expectedResponse.isEmpty() && !paginator.isEnabled()
+                    && !(isWaitForServer && waitMode.equals(WAIT_MODE_SSE))) {
+                if (extractor != null && jsonCondition == null) {
+                    streamConsumer = extractor;
+                } else if (extractor == null && jsonCondition != null) {
+                    streamConsumer = jsonCondition;
+                }
+            }
+            restRequest.setBodyConsumer(streamConsumer);
 
-            // Set headers output as a JSON object represented by a Map
-            response.getOutputProperties().setJson("responseHeaders", restResponse.getHeaders());
+            RESTResponse restResponse;
+            if (isWaitForServer && waitMode.equals(WAIT_MODE_SSE)) {
+                // Hold the stream open for a while and stop at the first event that matches the expected response
+                int windowMillis = Math.min(remainingSeconds, STREAM_WINDOW_SECONDS) * 1000;
+                PatternCache.Expression expression = PatternCache.getShared().get(expectedResponse);
+                JsonCondition eventCondition = jsonCondition;
+                restResponse = RESTClient.stream(restRequest.setReadTimeout(windowMillis), windowMillis,
+                        event -> expression.find(event.getData())
+                                && (eventCondition == null || eventCondition.matches(event.getData())));
+                response.getOutputProperties().setString("__lastEventId", restResponse.getLastEventId());
+            } else if (isWaitForServer) {
+                // The server holds the request until something changes, so wait for it up to the timeout
+                restResponse = RESTClient.execute(restRequest.setReadTimeout(remainingSeconds * 1000));
+            } else {
+                restResponse = RESTClient.execute(restRequest);
+            }
 
-            // Set response output as a String
-            String responseBody = restResponse.getBody();
-            response.getOutputProperties().setString("responseBody", responseBody);
+            // Gather the items of every page into a JSON array that stands in for the response body. The status and
+            // headers are those of the last page.
+            Paginator.Result pages = null;
+            if (paginator.isEnabled()) {
+                pages = paginator.collect(restRequest, restResponse);
+                restResponse = pages.getLastPage();
+                response.getOutputProperties().setInteger("pageCount", pages.getPageCount());
+                response.getOutputProperties().setBoolean("hasMorePages", pages.hasMorePages());
+            }
 
-            // Check the expected status codes so we know what status codes should result in failure or continued polling
             boolean isExpected = true;
-            if (!expectedStatuses.isEmpty() && !expectedStatuses.contains(String.valueOf(responseStatus))) {
-                logger.info("Response status was not one of the expected statuses: " + responseStatus);
+            if (isConditional && restResponse.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Nothing changed since the previous poll. Its outputs are still set and did not match, otherwise we
+                // would not be polling, so there is no body to read and nothing to match again.
+                logger.info("Response has not been modified since the previous poll");
                 isExpected = false;
-            }
+            } else {
+                // Set status code output as an Integer
+                int responseStatus = restResponse.getStatus();
+                response.getOutputProperties().setInteger("responseStatus", responseStatus);
 
-            // Check the expected response so we know what response should result in failure or continued polling
-            if (!expectedResponse.isEmpty() && !Pattern.compile(expectedResponse).matcher(responseBody).find()) {
-                logger.info("Response body did not match the expected expression");
-                isExpected = false;
+                // Set headers output as a JSON object represented by a Map
+                response.getOutputProperties().setJson("responseHeaders", restResponse.getHeaders());
+
+                // Set response output as a String. A response body that was too large is either truncated or fails the
+                // request when it is read, depending on the onOversize input.
+                String responseBody = pages != null ? pages.getBody() : restResponse.getBody();
+                boolean isTruncated = pages != null ? pages.isTruncated() : restResponse.isTruncated();
+                response.getOutputProperties().setString("responseBody", isOmitResponseBody ? "" : responseBody);
+                response.getOutputProperties().setBoolean("responseTruncated", isTruncated);
+                if (isTruncated) {
+                    logger.warning("Response body exceeded 4MB and was truncated");
+                }
+
+                // Set the extracted values as a JSON object keyed by name
+                if (extractor != null) {
+                    if (streamConsumer != extractor) {
+                        try {
+                            extractor.consume(new StringReader(responseBody));
+                        } catch (IOException e) {
+                            // Not expected when reading from a string
+                            logger.severe(EXTRACT_FAIL + e);
+                            response.setFailed(EXTRACT_FAIL + e.getMessage());
+                            return;
+                        }
+                    }
+                    response.getOutputProperties().setJson("extracted", extractor.getValues());
+                }
+
+                // Save the validators of this response for the next poll
+                if (isPoll) {
+                    String etag = restResponse.getHeader("ETag");
+                    String lastModified = restResponse.getHeader("Last-Modified");
+                    response.getOutputProperties().setString("__etag", etag != null ? etag : "");
+                    response.getOutputProperties().setString("__lastModified", lastModified != null ? lastModified : "");
+                }
+
+                // Check the expected status codes so we know what status codes should result in failure or continued polling
+                if (!expectedStatusSet.isEmpty() && !expectedStatusSet.contains(responseStatus)) {
+                    logger.info("Response status was not one of the expected statuses: " + responseStatus);
+                    isExpected = false;
+                }
+
+                // Check the expected response so we know what response should result in failure or continued polling
+                // Compiled expressions are cached since the same one is matched again on every poll
+                if (!expectedResponse.isEmpty() && !PatternCache.getShared().get(expectedResponse).find(responseBody)) {
+                    logger.info("Response body did not match the expected expression");
+                    isExpected = false;
+                }
+
+                // Check the expected JSON condition, unless it was already checked while the body streamed in
+                if (jsonCondition != null && !(streamConsumer == jsonCondition
+                        ? jsonCondition.isMatched() : jsonCondition.matches(responseBody))) {
+                    logger.info("Response body did not meet the expected JSON condition");
+                    isExpected = false;
+                }
             }
 
             // Check to see if we received the expected response and can complete this tile execution
@@ -129,33 +414,65 @@ public class TaskTile implements TileExecutable {
                 // The request has completed successfully so no further action is needed
                 logger.info("Request completed successfully");
             } else if (isPoll) {
-                // If this is an asynchronous request check how long the tile has been running and get the execution state
-                int duration = request.getDurationSeconds();
-                int attempts = response.getOutputProperties().getAsInteger("__attempts");
-                logger.info(String.format("Response did not match expectations after %d attempts over %d sec", attempts, duration));
-                if (duration >= timeout) {
-                    // If we have reached the timeout, fail the request. The tile will not be called back after this
-                    String failureMessage = String.format(ASYNC_TIMEOUT_FAIL, duration);
-                    logger.severe(failureMessage);
-                    response.setFailed(failureMessage);
-                } else {
-                    // Otherwise, in order to continue polling we take the following steps:
-                    // 1. Update our execution state (Optional)
-                    // 2. Set a user friendly progress message and code (Optional)
-                    // 3. Mark the request as not completed. The execution interval need not be set unless you want to change it
-                    response.getOutputProperties().setInteger("__attempts", attempts + 1);
-                    response.setProgressMessage(String.format(ASYNC_PROGRESS_MESSAGE, duration));
-                    response.setProgressCode(ASYNC_PROGRESS_CODE);
-                    response.setCompleted(false);
-                }
+                int retryAfter = PollingPolicy.getRetryAfterSeconds(restResponse.getHeader("Retry-After"));
+                pollAgain(request, response, interval, timeout, isWaitForServer, pollingPolicy, retryAfter);
             } else {
                 // If this a synchronous request then fail the request
                 logger.severe(EXPECTED_RESPONSE_FAIL);
                 response.setFailed(EXPECTED_RESPONSE_FAIL);
             }
+        } catch (CircuitBreaker.CircuitOpenException ex) {
+            if (isPoll) {
+                // The server is failing for everyone on this route, which is no reason to give up on it before the
+                // timeout. Wait at least until the breaker lets a request through again.
+                logger.info("Request was not sent as the server is failing");
+                pollAgain(request, response, interval, timeout, isWaitForServer, pollingPolicy, ex.getRetryAfterSeconds());
+            } else {
+                logger.info("Failed to execute REST task.");
+                response.setFailed(ex.getMessage());
+            }
         } catch (RESTException ex) {
             logger.info("Failed to execute REST task.");
             response.setFailed(ex.getMessage());
         }
     }
+
+    private static void pollAgain(TileExecutableRequest request, TileExecutableResponse response, int interval,
+            int timeout, boolean isWaitForServer, PollingPolicy pollingPolicy, int retryAfter) {
+        // If this is an asynchronous request check how long the tile has been running and get the execution state
+        int duration = request.getDurationSeconds();
+        int attempts = response.getOutputProperties().getAsInteger("__attempts");
+        logger.info(String.format("Response did not match expectations after %d attempts over %d sec", attempts, duration));
+        if (duration >= timeout) {
+            // If we have reached the timeout, fail the request. The tile will not be called back after this
+            String failureMessage = String.format(ASYNC_TIMEOUT_FAIL, duration);
+            logger.severe(failureMessage);
+            response.setFailed(failureMessage);
+        } else {
+            // Otherwise, in order to continue polling we take the following steps:
+            // 1. Update our execution state (Optional)
+            // 2. Set a user friendly progress message and code (Optional)
+            // 3. Work out when to poll next. The interval grows according to the polling policy, a Retry-After
+            //    header asks us to wait at least that long, and there is no point waiting past the timeout.
+            // 4. Mark the request as not completed. The execution interval need not be set unless you want to change it
+            response.getOutputProperties().setInteger("__attempts", attempts + 1);
+            int currentInterval = response.getOutputProperties().getAsInteger("__interval", interval);
+            int previousInterval = response.getOutputProperties().getAsInteger("__previousInterval", 0);
+            int nextInterval = pollingPolicy.nextInterval(currentInterval, previousInterval);
+            response.getOutputProperties().setInteger("__interval", nextInterval);
+            response.getOutputProperties().setInteger("__previousInterval", currentInterval);
+
+            int delay = isWaitForServer ? 1 : pollingPolicy.applyJitter(nextInterval);
+            if (retryAfter > delay) {
+                logger.info(String.format("Server asked to retry after %d sec", retryAfter));
+                delay = retryAfter;
+            }
+            delay = Math.max(1, Math.min(delay, timeout - duration));
+            response.setExecutionIntervalSeconds(delay);
+            logger.info(String.format("Polling again in %d sec", delay));
+            response.setProgressMessage(String.format(ASYNC_PROGRESS_MESSAGE, duration));
+            response.setProgressCode(ASYNC_PROGRESS_CODE);
+            response.setCompleted(false);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,218 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BodyReader {
+
+    // Bodies of unknown length are read into fixed size chunks that are recycled between responses, so reading a
+    // large body only allocates the final right-sized array rather than a growing series of copies
+    private static final int CHUNK_SIZE_BYTES = 16 * 1024;
+    private static final int MAX_POOLED_CHUNKS = 256;
+
+    private static final Queue<ByteBuffer> chunkPool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledChunks = new AtomicInteger();
+
+    private BodyReader() {
+    }
+
+    public static Result read(InputStream inputStream, long contentLength, Charset charset, int limit, boolean keepPrefix)
+            throws IOException {
+        if (contentLength >= 0 && contentLength <= limit) {
+            // The length is known up front so read straight into an array of the right size
+            byte[] bytes = new byte[(int) contentLength];
+            int length = readFully(inputStream, bytes);
+            int next;
+            if (length < bytes.length || (next = inputStream.read()) == -1) {
+                return new Result(new String(bytes, 0, length, charset), length, false);
+            }
+
+            // The stream holds more than was announced. Keep the body byte-exact anyway by reading the remainder in
+            // chunks behind the bytes we already have.
+            byte[] head = Arrays.copyOf(bytes, length + 1);
+            head[length] = (byte) next;
+            return readChunks(inputStream, head, charset, limit, keepPrefix);
+        }
+        return readChunks(inputStream, new byte[0], charset, limit, keepPrefix);
+    }
+
+    public static void drain(InputStream inputStream) throws IOException {
+        ByteBuffer chunk = acquireChunk();
+        try {
+            while (inputStream.read(chunk.array()) != -1) {
+                // Discard the remaining bytes
+            }
+        } finally {
+            releaseChunk(chunk);
+        }
+    }
+
+    // Discards at most limit bytes and returns true if that reached the end of the stream
+    public static boolean drain(InputStream inputStream, long limit) throws IOException {
+        ByteBuffer chunk = acquireChunk();
+        try {
+            long total = 0;
+            int read;
+            while ((read = inputStream.read(chunk.array(), 0, (int) Math.min(chunk.capacity(), limit + 1 - total))) != -1) {
+                total += read;
+                if (total > limit) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            releaseChunk(chunk);
+        }
+    }
+
+    public static Charset getCharset(String contentType) {
+        // Use the charset parameter of the Content-Type header if there is a supported one, UTF-8 otherwise
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                String trimmed = parameter.trim();
+                if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                    String name = trimmed.substring(8).replace("\"", "").trim();
+                    try {
+                        return Charset.forName(name);
+                    } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                        break;
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static int readFully(InputStream inputStream, byte[] bytes) throws IOException {
+        int offset = 0;
+        int read;
+        while (offset < bytes.length && (read = inputStream.read(bytes, offset, bytes.length - offset)) != -1) {
+            offset += read;
+        }
+        return offset;
+    }
+
+    private static Result readChunks(InputStream inputStream, byte[] head, Charset charset, int limit, boolean keepPrefix)
+            throws IOException {
+        // Read the stream to the end so that the connection can be handed back to the keep-alive cache, unless the
+        // body crosses the limit in which case reading stops straight away, then copy the chunks into a single array
+        List<ByteBuffer> chunks = new ArrayList<>();
+        long total = head.length;
+        try {
+            ByteBuffer chunk = acquireChunk();
+            chunks.add(chunk);
+            while (total <= limit) {
+                if (!chunk.hasRemaining()) {
+                    chunk = acquireChunk();
+                    chunks.add(chunk);
+                }
+                // Never ask for more than one byte past the limit so that we stop as soon as it is crossed
+                int wanted = (int) Math.min(chunk.remaining(), limit + 1 - total);
+                int read = inputStream.read(chunk.array(), chunk.position(), wanted);
+                if (read == -1) {
+                    break;
+                }
+                chunk.position(chunk.position() + read);
+                total += read;
+            }
+
+            boolean exceeded = total > limit;
+            if (exceeded && !keepPrefix) {
+                return new Result("", total, true);
+            }
+
+            byte[] bytes = new byte[(int) Math.min(total, limit)];
+            int position = Math.min(head.length, bytes.length);
+            System.arraycopy(head, 0, bytes, 0, position);
+            for (ByteBuffer filled : chunks) {
+                int length = Math.min(filled.position(), bytes.length - position);
+                System.arraycopy(filled.array(), 0, bytes, position, length);
+                position += length;
+            }
+            return new Result(exceeded ? decodePrefix(bytes, charset) : new String(bytes, charset), total, exceeded);
+        } finally {
+            chunks.forEach(BodyReader::releaseChunk);
+        }
+    }
+
+    private static String decodePrefix(byte[] bytes, Charset charset) {
+        // The limit can cut a multibyte character in two. Decoding without marking the end of the input leaves the
+        // bytes of that last character undecoded, rather than ending the text with a replacement character.
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer text = CharBuffer.allocate((int) Math.ceil(bytes.length * (double) decoder.maxCharsPerByte()));
+        decoder.decode(ByteBuffer.wrap(bytes), text, false);
+        text.flip();
+        return text.toString();
+    }
+
+    private static ByteBuffer acquireChunk() {
+        ByteBuffer chunk = chunkPool.poll();
+        if (chunk == null) {
+            return ByteBuffer.allocate(CHUNK_SIZE_BYTES);
+        }
+        pooledChunks.decrementAndGet();
+        return chunk;
+    }
+
+    private static void releaseChunk(ByteBuffer chunk) {
+        if (pooledChunks.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+            chunk.clear();
+            chunkPool.offer(chunk);
+        } else {
+            pooledChunks.decrementAndGet();
+        }
+    }
+
+    public static class Result {
+        private final String text;
+        private final long bytesRead;
+        private final boolean exceeded;
+
+        private Result(String text, long bytesRead, boolean exceeded) {
+            this.text = text;
+            this.bytesRead = bytesRead;
+            this.exceeded = exceeded;
+        }
+
+        // The body text, or only its prefix up to the limit if the limit was exceeded and the prefix was kept
+        public String getText() {
+            return this.text;
+        }
+
+        // The number of bytes read from the stream, which is one past the limit if the limit was exceeded
+        public long getBytesRead() {
+            return this.bytesRead;
+        }
+
+        public boolean isExceeded() {
+            return this.exceeded;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class CircuitBreaker {
+
+    private static final Logger logger = Logger.getLogger(CircuitBreaker.class.getName());
+
+    private static final String CIRCUIT_OPEN_ERROR_FMT = "Not sending request to %s as it is failing, next attempt allowed in %d s";
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = 30000L;
+
+    public enum State {
+        // Requests are sent as normal
+        CLOSED,
+        // Requests fail straight away without being sent
+        OPEN,
+        // A single request is sent to find out whether the server has recovered
+        HALF_OPEN
+    }
+
+    // Breakers by route, that is scheme, host and port, the same as the connection pool. A route opens after a number
+    // of failures in a row and then fails requests straight away for a while, rather than tying up a thread for the
+    // connect timeout of each one while the server is down. Once that time is up one request is let through, and the
+    // route closes again if it succeeds or stays open for another while if it fails.
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final int failureThreshold;
+    private final long openNanos;
+
+    public CircuitBreaker() {
+        this(Integer.getInteger("com.vmware.vrcs.plugin.rest.circuitFailureThreshold", DEFAULT_FAILURE_THRESHOLD),
+                Long.getLong("com.vmware.vrcs.plugin.rest.circuitOpenMillis", DEFAULT_OPEN_MILLIS));
+    }
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, openMillis));
+    }
+
+    // Fails if the route is open. Every request let through must be followed by a call to record with its outcome, or
+    // to release if it never reached the server.
+    public void acquire(URL url) throws RESTException {
+        Route route = getRoute(url);
+        long now = System.nanoTime();
+        if (!route.tryAcquire(now, this.openNanos)) {
+            route.rejected.increment();
+            // Round up, and a route waiting on the request that tests it is at most moments away from an answer
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(route.openedNanos + this.openNanos - now);
+            long waitSeconds = Math.max(1, (waitMillis + 999) / 1000);
+            String error = String.format(CIRCUIT_OPEN_ERROR_FMT, route.key, waitSeconds);
+            logger.severe(error);
+            throw new CircuitOpenException(error, (int) waitSeconds);
+        }
+    }
+
+    public void record(URL url, boolean isSuccess) {
+        Route route = getRoute(url);
+        if (isSuccess) {
+            route.successes.increment();
+        } else {
+            route.failures.increment();
+        }
+        route.record(isSuccess, this.failureThreshold, System.nanoTime());
+    }
+
+    // A request that failed before it was sent, such as one that timed out waiting for a connection, says nothing
+    // about the server. It neither counts towards opening the route nor closes it, and the request that was to find
+    // out whether the server is back leaves that to the next one.
+    public void release(URL url) {
+        getRoute(url).release();
+    }
+
+    public void recordRetry(URL url) {
+        getRoute(url).retries.increment();
+    }
+
+    // Whether a response means that the server is not able to answer, as opposed to answering with an error
+    public static boolean isFailureStatus(int status) {
+        return status == 502 || status == 503 || status == 504;
+    }
+
+    // Whether a failed request means that the server could not be reached or stopped answering
+    public static boolean isFailure(RESTException e) {
+        return e.getCause() instanceof IOException;
+    }
+
+    public State getState(URL url) {
+        Route route = this.routes.get(ConnectionPool.getRouteKey(url));
+        return route == null ? State.CLOSED : route.state;
+    }
+
+    public List<RouteStats> getStats() {
+        List<RouteStats> stats = new ArrayList<>();
+        this.routes.values().forEach(route -> stats.add(new RouteStats(route)));
+        return stats;
+    }
+
+    // Forgets every route, closing any open ones
+    public void reset() {
+        this.routes.clear();
+    }
+
+    private Route getRoute(URL url) {
+        return this.routes.computeIfAbsent(ConnectionPool.getRouteKey(url), Route::new);
+    }
+
+    // A request that was not sent because its route is open. Polling tasks wait it out instead of failing.
+    public static class CircuitOpenException extends RESTException {
+        private final int retryAfterSeconds;
+
+        private CircuitOpenException(String message, int retryAfterSeconds) {
+            super("%s", message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getRetryAfterSeconds() {
+            return this.retryAfterSeconds;
+        }
+    }
+
+    private static class Route {
+        private final String key;
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder opened = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private volatile State state = State.CLOSED;
+        private volatile long openedNanos;
+        private int consecutiveFailures;
+
+        private Route(String key) {
+            this.key = key;
+        }
+
+        private synchronized boolean tryAcquire(long now, long openNanos) {
+            switch (this.state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (now - this.openedNanos < openNanos) {
+                        return false;
+                    }
+                    // This request finds out whether the server is back, the rest keep failing until it does
+                    logger.info("Circuit breaker half open for " + this.key);
+                    this.state = State.HALF_OPEN;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private synchronized void release() {
+            if (this.state == State.HALF_OPEN) {
+                this.state = State.OPEN;
+            }
+        }
+
+        private synchronized void record(boolean isSuccess, int failureThreshold, long now) {
+            if (isSuccess) {
+                if (this.state != State.CLOSED) {
+                    logger.info("Circuit breaker closed for " + this.key);
+                }
+                this.consecutiveFailures = 0;
+                this.state = State.CLOSED;
+                return;
+            }
+
+            this.consecutiveFailures++;
+            if (this.state == State.HALF_OPEN
+                    || (this.state == State.CLOSED && this.consecutiveFailures >= failureThreshold)) {
+                logger.warning(String.format("Circuit breaker opened for %s after %d failures in a row", this.key,
+                        this.consecutiveFailures));
+                this.state = State.OPEN;
+                this.openedNanos = now;
+                this.opened.increment();
+            }
+        }
+    }
+
+    public static class RouteStats {
+        private final String route;
+        private final State state;
+        private final long successes;
+        private final long failures;
+        private final long rejected;
+        private final long opened;
+        private final long retries;
+
+        private RouteStats(Route route) {
+            this.route = route.key;
+            this.state = route.state;
+            this.successes = route.successes.sum();
+            this.failures = route.failures.sum();
+            this.rejected = route.rejected.sum();
+            this.opened = route.opened.sum();
+            this.retries = route.retries.sum();
+        }
+
+        public String getRoute() {
+            return this.route;
+        }
+
+        public State getState() {
+            return this.state;
+        }
+
+        public long getSuccesses() {
+            return this.successes;
+        }
+
+        public long getFailures() {
+            return this.failures;
+        }
+
+        // Requests failed straight away because the route was open
+        public long getRejected() {
+            return this.rejected;
+        }
+
+        // How many times the route has opened
+        public long getOpened() {
+            return this.opened;
+        }
+
+        public long getRetries() {
+            return this.retries;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s state=%s successes=%d failures=%d rejected=%d opened=%d retries=%d", this.route,
+                    this.state, this.successes, this.failures, this.rejected, this.opened, this.retries);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class ConnectionPool {
+
+    private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+
+    private static final String LEASE_TIMEOUT_ERROR_FMT = "Timed out after %d ms waiting for a connection to %s";
+    private static final String LEASE_INTERRUPTED_ERROR = "Interrupted while waiting for a connection to ";
+
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000L;
+    public static final long DEFAULT_LEASE_TIMEOUT_MILLIS = 30000L;
+
+    // The sockets themselves live in the keep-alive cache of HttpURLConnection which hands an idle connection back
+    // out whenever a response body was fully read and closed without calling disconnect(). This pool sits in front of
+    // that cache and caps the number of connections opened per route (scheme, host and port), so that a burst of
+    // requests queues for a connection instead of opening hundreds of sockets to the same server.
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicLong lastEvictionNanos = new AtomicLong(System.nanoTime());
+    private final int maxPerRoute;
+    private final long idleTimeoutMillis;
+    private final long leaseTimeoutMillis;
+
+    public ConnectionPool() {
+        this(DEFAULT_MAX_PER_ROUTE, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_LEASE_TIMEOUT_MILLIS);
+    }
+
+    public ConnectionPool(int maxPerRoute, long idleTimeoutMillis, long leaseTimeoutMillis) {
+        this.maxPerRoute = maxPerRoute;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+    }
+
+    public long getLeaseTimeoutMillis() {
+        return this.leaseTimeoutMillis;
+    }
+
+    public Lease lease(URL url) throws RESTException {
+        return lease(url, this.leaseTimeoutMillis);
+    }
+
+    // Waits at most timeoutMillis for a connection, for a caller with less time left than the lease timeout
+    public Lease lease(URL url, long timeoutMillis) throws RESTException {
+        evictIdleRoutes();
+
+        // Register interest in the route before waiting for a permit so it cannot be evicted while we wait
+        String key = getRouteKey(url);
+        Route route = this.routes.compute(key, (k, existing) -> {
+            Route current = existing != null ? existing : new Route(k, this.maxPerRoute);
+            current.references.incrementAndGet();
+            return current;
+        });
+
+        try {
+            if (!route.permits.tryAcquire()) {
+                route.waitedLeases.increment();
+                if (!route.permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    route.timedOutLeases.increment();
+                    route.references.decrementAndGet();
+                    String error = String.format(LEASE_TIMEOUT_ERROR_FMT, timeoutMillis, key);
+                    logger.severe(error);
+                    throw new RESTException(error);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            route.references.decrementAndGet();
+            logger.severe(LEASE_INTERRUPTED_ERROR + key);
+            throw new RESTException(LEASE_INTERRUPTED_ERROR + key, e);
+        }
+
+        route.totalLeases.increment();
+        int inFlight = route.inFlight.incrementAndGet();
+        route.peakInFlight.accumulateAndGet(inFlight, Math::max);
+        return new Lease(route);
+    }
+
+    public List<RouteStats> getStats() {
+        List<RouteStats> stats = new ArrayList<>();
+        long now = System.nanoTime();
+        this.routes.values().forEach(route -> stats.add(new RouteStats(route, this.maxPerRoute, now)));
+        return stats;
+    }
+
+    public void evictIdleRoutes() {
+        // Only sweep once per half idle timeout so that leasing stays cheap on the hot path
+        long now = System.nanoTime();
+        long last = this.lastEvictionNanos.get();
+        if (now - last < TimeUnit.MILLISECONDS.toNanos(this.idleTimeoutMillis / 2)
+                || !this.lastEvictionNanos.compareAndSet(last, now)) {
+            return;
+        }
+
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(this.idleTimeoutMillis);
+        for (String key : this.routes.keySet()) {
+            this.routes.computeIfPresent(key, (k, route) -> {
+                if (route.references.get() == 0 && now - route.lastUsedNanos > idleTimeoutNanos) {
+                    logger.fine("Evicting idle connection route " + k);
+                    return null;
+                }
+                return route;
+            });
+        }
+    }
+
+    static String getRouteKey(URL url) {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        return url.getProtocol() + "://" + url.getHost().toLowerCase() + ":" + port;
+    }
+
+    private static class Route {
+        private final String key;
+        private final Semaphore permits;
+        private final AtomicInteger references = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peakInFlight = new AtomicInteger();
+        private final LongAdder totalLeases = new LongAdder();
+        private final LongAdder waitedLeases = new LongAdder();
+        private final LongAdder timedOutLeases = new LongAdder();
+        private final LongAdder reusedConnections = new LongAdder();
+        private final LongAdder newConnections = new LongAdder();
+        private final boolean isReuseKnown;
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private Route(String key, int maxPerRoute) {
+            this.key = key;
+            this.permits = new Semaphore(maxPerRoute, true);
+            // HttpURLConnection does not say whether it reused a socket. Only a new HTTPS connection goes through our
+            // socket factory for its handshake, so reuse is only known for HTTPS routes.
+            this.isReuseKnown = key.startsWith("https:");
+        }
+    }
+
+    public static class Lease implements AutoCloseable {
+        private final Route route;
+        private boolean released = false;
+
+        private Lease(Route route) {
+            this.route = route;
+        }
+
+        // Notes whether the request opened a new connection rather than reusing one from the keep-alive cache
+        public void recordConnection(boolean isNew) {
+            if (this.route.isReuseKnown) {
+                (isNew ? this.route.newConnections : this.route.reusedConnections).increment();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (this.released) {
+                return;
+            }
+            this.released = true;
+            this.route.lastUsedNanos = System.nanoTime();
+            this.route.inFlight.decrementAndGet();
+            this.route.references.decrementAndGet();
+            this.route.permits.release();
+        }
+    }
+
+    public static class RouteStats {
+        private final String route;
+        private final int maxConnections;
+        private final int inFlight;
+        private final int peakInFlight;
+        private final long totalLeases;
+        private final long waitedLeases;
+        private final long timedOutLeases;
+        private final long reusedConnections;
+        private final long newConnections;
+        private final boolean isReuseKnown;
+        private final long idleMillis;
+
+        private RouteStats(Route route, int maxConnections, long now) {
+            this.route = route.key;
+            this.maxConnections = maxConnections;
+            this.inFlight = route.inFlight.get();
+            this.peakInFlight = route.peakInFlight.get();
+            this.totalLeases = route.totalLeases.sum();
+            this.waitedLeases = route.waitedLeases.sum();
+            this.timedOutLeases = route.timedOutLeases.sum();
+            this.reusedConnections = route.reusedConnections.sum();
+            this.newConnections = route.newConnections.sum();
+            this.isReuseKnown = route.isReuseKnown;
+            this.idleMillis = this.inFlight > 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(now - route.lastUsedNanos);
+        }
+
+        public String getRoute() {
+            return this.route;
+        }
+
+        public int getMaxConnections() {
+            return this.maxConnections;
+        }
+
+        public int getInFlight() {
+            return this.inFlight;
+        }
+
+        public int getPeakInFlight() {
+            return this.peakInFlight;
+        }
+
+        public long getTotalLeases() {
+            return this.totalLeases;
+        }
+
+        public long getWaitedLeases() {
+            return this.waitedLeases;
+        }
+
+        public long getTimedOutLeases() {
+            return this.timedOutLeases;
+        }
+
+        // Whether the route counts reused and new connections, which is only the case for HTTPS
+        public boolean isReuseKnown() {
+            return this.isReuseKnown;
+        }
+
+        // Requests that were sent on an idle keep-alive socket rather than a new connection, -1 if not known
+        public long getReusedConnections() {
+            return this.isReuseKnown ? this.reusedConnections : -1;
+        }
+
+        public long getNewConnections() {
+            return this.isReuseKnown ? this.newConnections : -1;
+        }
+
+        public double getReuseRatio() {
+            long connections = this.reusedConnections + this.newConnections;
+            if (!this.isReuseKnown) {
+                return -1.0;
+            }
+            return connections == 0 ? 0.0 : (double) this.reusedConnections / connections;
+        }
+
+        public long getIdleMillis() {
+            return this.idleMillis;
+        }
+
+        @Override
+        public String toString() {
+            String reuse = this.isReuseKnown
+                    ? String.format(" reused=%d new=%d", this.reusedConnections, this.newConnections) : "";
+            return String.format("%s inFlight=%d/%d peak=%d leases=%d waited=%d timedOut=%d%s idle=%dms",
+                    this.route, this.inFlight, this.maxConnections, this.peakInFlight, this.totalLeases,
+                    this.waitedLeases, this.timedOutLeases, reuse, this.idleMillis);
+        }
+    }
+}
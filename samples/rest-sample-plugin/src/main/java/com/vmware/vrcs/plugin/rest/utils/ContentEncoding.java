@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class ContentEncoding {
+
+    private static final Logger logger = Logger.getLogger(ContentEncoding.class.getName());
+
+    private static final String UNSUPPORTED_ENCODING_ERROR = "Response content encoding is not supported: ";
+
+    // Only the encodings the JDK can decode are advertised. Brotli would need a native or third party decoder.
+    public static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+    public static final String GZIP = "gzip";
+
+    private static final int BUFFER_SIZE_BYTES = 8192;
+
+    private ContentEncoding() {
+    }
+
+    public static InputStream decode(InputStream inputStream, String contentEncoding) throws IOException, RESTException {
+        if (contentEncoding == null || contentEncoding.isEmpty()) {
+            return inputStream;
+        }
+
+        // Responses such as 204 or 304 carry the header without a body, which would fail to decode
+        PushbackInputStream pushbackStream = new PushbackInputStream(inputStream, 1);
+        int first = pushbackStream.read();
+        if (first == -1) {
+            return pushbackStream;
+        }
+        pushbackStream.unread(first);
+
+        // Encodings are listed in the order they were applied so undo them from last to first
+        String[] encodings = contentEncoding.split(",");
+        InputStream decoded = pushbackStream;
+        for (int i = encodings.length - 1; i >= 0; i--) {
+            String encoding = encodings[i].trim().toLowerCase();
+            switch (encoding) {
+                case "":
+                case "identity":
+                    break;
+                case "gzip":
+                case "x-gzip":
+                    decoded = new GZIPInputStream(decoded, BUFFER_SIZE_BYTES);
+                    break;
+                case "deflate":
+                    decoded = inflate(decoded);
+                    break;
+                default:
+                    logger.severe(UNSUPPORTED_ENCODING_ERROR + encoding);
+                    throw new RESTException(UNSUPPORTED_ENCODING_ERROR + encoding);
+            }
+        }
+        return decoded;
+    }
+
+    public static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed, BUFFER_SIZE_BYTES)) {
+            gzipStream.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static InputStream inflate(InputStream inputStream) throws IOException {
+        // "deflate" is meant to be zlib wrapped but some servers send a raw deflate stream, so peek at the header
+        PushbackInputStream pushbackStream = new PushbackInputStream(inputStream, 2);
+        int cmf = pushbackStream.read();
+        int flg = pushbackStream.read();
+        if (flg != -1) {
+            pushbackStream.unread(flg);
+        }
+        if (cmf != -1) {
+            pushbackStream.unread(cmf);
+        }
+        boolean isZlib = cmf != -1 && flg != -1 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+
+        // Release the native inflater as soon as the stream is closed rather than waiting for garbage collection
+        Inflater inflater = new Inflater(!isZlib);
+        return new InflaterInputStream(pushbackStream, inflater, BUFFER_SIZE_BYTES) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
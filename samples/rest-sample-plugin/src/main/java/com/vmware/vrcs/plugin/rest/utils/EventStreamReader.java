@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class EventStreamReader {
+
+    private static final Logger logger = Logger.getLogger(EventStreamReader.class.getName());
+
+    private static final String EVENT_TOO_LARGE_ERROR_FMT = "Unable to read server-sent event as it exceeds %d bytes";
+
+    // Reads a text/event-stream one event at a time as the server sends it. Events are always UTF-8 and lines may end
+    // with CR, LF or CRLF.
+    private final PushbackInputStream inputStream;
+    private final int maxEventBytes;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    private String lastEventId = "";
+
+    public EventStreamReader(InputStream inputStream, int maxEventBytes) {
+        this.inputStream = new PushbackInputStream(new BufferedInputStream(inputStream), 1);
+        this.maxEventBytes = maxEventBytes;
+    }
+
+    // The next event with data, or null at the end of the stream. Blocks until the server sends one.
+    public Event next() throws IOException, RESTException {
+        StringBuilder data = null;
+        String type = "message";
+        int eventBytes = 0;
+        String text;
+        while ((text = readLine(this.maxEventBytes - eventBytes)) != null) {
+            eventBytes += this.line.size() + 1;
+            if (eventBytes > this.maxEventBytes) {
+                throw eventTooLarge();
+            }
+
+            if (text.isEmpty()) {
+                // A blank line dispatches the event, if it had any data
+                if (data != null) {
+                    return new Event(this.lastEventId, type, data.toString());
+                }
+                type = "message";
+                eventBytes = 0;
+                continue;
+            }
+            if (text.startsWith(":")) {
+                // Comment, usually sent to keep the connection alive
+                continue;
+            }
+
+            int colon = text.indexOf(':');
+            String field = colon < 0 ? text : text.substring(0, colon);
+            String value = colon < 0 ? "" : text.substring(colon + (text.startsWith(" ", colon + 1) ? 2 : 1));
+            switch (field) {
+                case "data":
+                    data = data == null ? new StringBuilder(value) : data.append('\n').append(value);
+                    break;
+                case "event":
+                    type = value;
+                    break;
+                case "id":
+                    if (value.indexOf('\0') < 0) {
+                        this.lastEventId = value;
+                    }
+                    break;
+                default:
+                    // "retry" and unknown fields are ignored, the tile decides when to reconnect
+                    break;
+            }
+        }
+        return null;
+    }
+
+    public String getLastEventId() {
+        return this.lastEventId;
+    }
+
+    private String readLine(int maxLineBytes) throws IOException, RESTException {
+        // The limit counts the line ending too. A line is rejected as soon as it can no longer fit, so a server that
+        // never ends a line cannot make the reader buffer it without end.
+        this.line.reset();
+        int read;
+        while ((read = this.inputStream.read()) != -1) {
+            if (read == '\n') {
+                break;
+            }
+            if (read == '\r') {
+                int next = this.inputStream.read();
+                if (next != '\n' && next != -1) {
+                    this.inputStream.unread(next);
+                }
+                break;
+            }
+            this.line.write(read);
+            if (this.line.size() >= maxLineBytes) {
+                throw eventTooLarge();
+            }
+        }
+        if (read == -1 && this.line.size() == 0) {
+            return null;
+        }
+        return new String(this.line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private RESTException eventTooLarge() {
+        String error = String.format(EVENT_TOO_LARGE_ERROR_FMT, this.maxEventBytes);
+        logger.severe(error);
+        return new RESTException(error);
+    }
+
+    public static class Event {
+        private final String id;
+        private final String type;
+        private final String data;
+
+        private Event(String id, String type, String data) {
+            this.id = id;
+            this.type = type;
+            this.data = data;
+        }
+
+        public String getId() {
+            return this.id;
+        }
+
+        public String getType() {
+            return this.type;
+        }
+
+        public String getData() {
+            return this.data;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Histogram {
+
+    // Each power of two is split into this many buckets, so a recorded value is off by at most 1 part in 16
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    // Counts of values in log-linear buckets, the same layout as an HDR histogram with one significant hex digit.
+    // Recording is a couple of shifts and an atomic increment with no locking and no allocation, so it is cheap
+    // enough for every request, and the memory used is fixed however many values are recorded.
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+    private final double unit;
+
+    // Values are reported divided by unit, such as 1e6 to record nanoseconds and report milliseconds
+    public Histogram(double unit) {
+        this.unit = unit;
+    }
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        this.counts.incrementAndGet(getBucket(v));
+        this.count.increment();
+        this.sum.add(v);
+        if (v > this.max.get()) {
+            this.max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        return new Snapshot(this);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.set(0);
+    }
+
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // The middle of the range of values that fall into the bucket
+    private static double getBucketValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + ((1L << shift) - 1) / 2.0;
+    }
+
+    public static class Snapshot {
+        private final long count;
+        private final double sum;
+        private final double max;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double p999;
+
+        private Snapshot(Histogram histogram) {
+            // Buckets are read one at a time while values may still be recorded, so the percentiles come from the
+            // counts actually read rather than from the separate total
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram.counts.get(i);
+                total += counts[i];
+            }
+            this.count = total;
+            this.sum = histogram.sum.sum() / histogram.unit;
+            this.max = histogram.max.get() / histogram.unit;
+            double[] percentiles = getPercentiles(counts, total, 0.5, 0.9, 0.99, 0.999);
+            this.p50 = Math.min(percentiles[0] / histogram.unit, this.max);
+            this.p90 = Math.min(percentiles[1] / histogram.unit, this.max);
+            this.p99 = Math.min(percentiles[2] / histogram.unit, this.max);
+            this.p999 = Math.min(percentiles[3] / histogram.unit, this.max);
+        }
+
+        private static double[] getPercentiles(long[] counts, long total, double... quantiles) {
+            double[] values = new double[quantiles.length];
+            long seen = 0;
+            int next = 0;
+            for (int i = 0; i < counts.length && next < quantiles.length; i++) {
+                seen += counts[i];
+                while (next < quantiles.length && seen > 0 && seen >= Math.ceil(quantiles[next] * total)) {
+                    values[next++] = getBucketValue(i);
+                }
+            }
+            return values;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public double getSum() {
+            return this.sum;
+        }
+
+        public double getMean() {
+            return this.count == 0 ? 0.0 : this.sum / this.count;
+        }
+
+        public double getMax() {
+            return this.max;
+        }
+
+        public double getP50() {
+            return this.p50;
+        }
+
+        public double getP90() {
+            return this.p90;
+        }
+
+        public double getP99() {
+            return this.p99;
+        }
+
+        public double getP999() {
+            return this.p999;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f p999=%.3f max=%.3f", this.count,
+                    getMean(), this.p50, this.p90, this.p99, this.p999, this.max);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class JsonCondition implements RESTClient.BodyConsumer {
+
+    private static final Logger logger = Logger.getLogger(JsonCondition.class.getName());
+
+    private static final String MALFORMED_CONDITION_ERROR = "Expected JSON condition is malformed: ";
+
+    private static final String OPERATOR_CHARACTERS = "=!<>&|";
+
+    private enum Operator {
+        EQUALS("=="),
+        NOT_EQUALS("!="),
+        LESS_OR_EQUAL("<="),
+        GREATER_OR_EQUAL(">="),
+        LESS("<"),
+        GREATER(">"),
+        MATCHES("=~"),
+        EXISTS("exists");
+
+        private final String symbol;
+
+        private Operator(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    // Conditions on the values at JSON paths, such as $.status == "DONE" && $.progress >= 100. Comparisons are joined
+    // with && and ||, where && binds tighter, and there are no parentheses. Paths are evaluated while the body streams
+    // in and reading stops as soon as the values found so far decide the outcome.
+    private final String condition;
+    private final List<JsonPath> paths = new ArrayList<>();
+    // Alternatives joined by ||, each a list of comparisons joined by &&
+    private final List<List<Comparison>> alternatives = new ArrayList<>();
+    private boolean isMatched;
+
+    private JsonCondition(String condition) {
+        this.condition = condition;
+    }
+
+    public static JsonCondition parse(String condition) throws RESTException {
+        JsonCondition parsed = new JsonCondition(condition);
+        Tokenizer tokenizer = new Tokenizer(condition);
+        List<Comparison> comparisons = new ArrayList<>();
+        while (true) {
+            String path = tokenizer.next();
+            if (path == null || !path.startsWith("$")) {
+                throw malformed(condition);
+            }
+            String symbol = tokenizer.next();
+            Operator operator = null;
+            for (Operator candidate : Operator.values()) {
+                if (candidate.symbol.equals(symbol)) {
+                    operator = candidate;
+                }
+            }
+            if (operator == null) {
+                throw malformed(condition);
+            }
+            Object operand = null;
+            if (operator != Operator.EXISTS) {
+                operand = parseOperand(tokenizer.next(), condition);
+                if (operator == Operator.MATCHES && !(operand instanceof String)) {
+                    throw malformed(condition);
+                }
+            }
+            comparisons.add(new Comparison(parsed.addPath(JsonPath.parse(path)), operator, operand));
+
+            String joiner = tokenizer.next();
+            if (joiner == null || joiner.equals("||")) {
+                parsed.alternatives.add(comparisons);
+                comparisons = new ArrayList<>();
+                if (joiner == null) {
+                    return parsed;
+                }
+            } else if (!joiner.equals("&&")) {
+                throw malformed(condition);
+            }
+        }
+    }
+
+    // Whether the body read by the last call to consume met the condition
+    public boolean isMatched() {
+        return this.isMatched;
+    }
+
+    public boolean matches(String body) {
+        try {
+            consume(new StringReader(body));
+        } catch (IOException e) {
+            // Not expected when reading from a string
+            logger.warning("Unable to read response body: " + e);
+            this.isMatched = false;
+        }
+        return this.isMatched;
+    }
+
+    @Override
+    public boolean consume(Reader reader) throws IOException {
+        JsonPathReader jsonReader = new JsonPathReader(this.paths);
+        boolean isRead;
+        try {
+            isRead = jsonReader.read(reader, () -> decide(jsonReader, false) != null);
+        } catch (RESTException e) {
+            // A body that is not JSON, such as an error page, simply does not meet the condition
+            logger.info("Response body is not JSON so does not match the expected condition");
+            this.isMatched = false;
+            return false;
+        }
+        this.isMatched = decide(jsonReader, true);
+        return isRead;
+    }
+
+    @Override
+    public String toString() {
+        return this.condition;
+    }
+
+    private int addPath(JsonPath path) {
+        for (int i = 0; i < this.paths.size(); i++) {
+            if (this.paths.get(i).getExpression().equals(path.getExpression())) {
+                return i;
+            }
+        }
+        this.paths.add(path);
+        return this.paths.size() - 1;
+    }
+
+    // True or false once the values found decide the outcome, otherwise null. At the end of the document every path
+    // that was not found is known to be missing, so the outcome is always decided.
+    private Boolean decide(JsonPathReader jsonReader, boolean isEnd) {
+        boolean isUndecided = false;
+        for (List<Comparison> comparisons : this.alternatives) {
+            Boolean allTrue = Boolean.TRUE;
+            for (Comparison comparison : comparisons) {
+                Boolean result = comparison.decide(jsonReader, this.paths.get(comparison.path), isEnd);
+                if (result == null) {
+                    allTrue = null;
+                } else if (!result) {
+                    allTrue = Boolean.FALSE;
+                    break;
+                }
+            }
+            if (allTrue == null) {
+                isUndecided = true;
+            } else if (allTrue) {
+                return Boolean.TRUE;
+            }
+        }
+        return isUndecided ? null : Boolean.FALSE;
+    }
+
+    private static Object parseOperand(String token, String condition) throws RESTException {
+        if (token == null) {
+            throw malformed(condition);
+        }
+        if (token.startsWith("\"") || token.startsWith("'")) {
+            return unquote(token, condition);
+        }
+        switch (token) {
+            case "true":
+                return Boolean.TRUE;
+            case "false":
+                return Boolean.FALSE;
+            case "null":
+                return null;
+            default:
+                break;
+        }
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            throw malformed(condition);
+        }
+    }
+
+    private static String unquote(String token, String condition) throws RESTException {
+        char quote = token.charAt(0);
+        if (token.length() < 2 || token.charAt(token.length() - 1) != quote) {
+            throw malformed(condition);
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i < token.length() - 1; i++) {
+            char c = token.charAt(i);
+            if (c == '\\' && i + 1 < token.length() - 1) {
+                c = token.charAt(++i);
+            }
+            text.append(c);
+        }
+        return text.toString();
+    }
+
+    private static RESTException malformed(String condition) {
+        logger.severe(MALFORMED_CONDITION_ERROR + condition);
+        return new RESTException(MALFORMED_CONDITION_ERROR + "%s", condition);
+    }
+
+    private static class Comparison {
+        private final int path;
+        private final Operator operator;
+        private final Object operand;
+
+        private Comparison(int path, Operator operator, Object operand) {
+            this.path = path;
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        private Boolean decide(JsonPathReader jsonReader, JsonPath jsonPath, boolean isEnd) {
+            if (!jsonReader.isFound(this.path)) {
+                // A missing value fails every comparison, but a value may still turn up later in the document
+                return isEnd ? Boolean.FALSE : null;
+            }
+            if (this.operator == Operator.EXISTS) {
+                return Boolean.TRUE;
+            }
+            if (jsonPath.isDefinite()) {
+                return test(jsonReader.getValue(this.path));
+            }
+
+            // A path with wildcards meets the comparison if any of the values it selects does, and more of them may
+            // still turn up later in the document
+            for (Object value : (List<?>) jsonReader.getValue(this.path)) {
+                if (test(value)) {
+                    return Boolean.TRUE;
+                }
+            }
+            return isEnd ? Boolean.FALSE : null;
+        }
+
+        private boolean test(Object value) {
+            switch (this.operator) {
+                case EQUALS:
+                    return isEqual(value, this.operand);
+                case NOT_EQUALS:
+                    return !isEqual(value, this.operand);
+                case MATCHES:
+                    return (value instanceof String || value instanceof Number || value instanceof Boolean)
+                            && PatternCache.getShared().get((String) this.operand).find(String.valueOf(value));
+                default:
+                    Integer order = compare(value, this.operand);
+                    if (order == null) {
+                        return false;
+                    }
+                    switch (this.operator) {
+                        case LESS:
+                            return order < 0;
+                        case LESS_OR_EQUAL:
+                            return order <= 0;
+                        case GREATER:
+                            return order > 0;
+                        default:
+                            return order >= 0;
+                    }
+            }
+        }
+
+        private static boolean isEqual(Object value, Object operand) {
+            if (value instanceof Number && operand instanceof Number) {
+                return ((Number) value).doubleValue() == ((Number) operand).doubleValue();
+            }
+            return value == null ? operand == null : value.equals(operand);
+        }
+
+        // The order of two numbers or two strings, or null if they cannot be ordered
+        private static Integer compare(Object value, Object operand) {
+            if (value instanceof Number && operand instanceof Number) {
+                return Double.compare(((Number) value).doubleValue(), ((Number) operand).doubleValue());
+            }
+            if (value instanceof String && operand instanceof String) {
+                return ((String) value).compareTo((String) operand);
+            }
+            return null;
+        }
+    }
+
+    private static class Tokenizer {
+        private final String text;
+        private int position;
+
+        private Tokenizer(String text) {
+            this.text = text;
+        }
+
+        // The next path, operator, joiner or operand, or null at the end of the condition
+        private String next() {
+            while (this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position))) {
+                this.position++;
+            }
+            if (this.position == this.text.length()) {
+                return null;
+            }
+
+            int start = this.position;
+            char c = this.text.charAt(start);
+            if (OPERATOR_CHARACTERS.indexOf(c) >= 0) {
+                // Operators and joiners are one or two characters long
+                this.position++;
+                if (this.position < this.text.length() && "=~&|".indexOf(this.text.charAt(this.position)) >= 0) {
+                    this.position++;
+                }
+                return this.text.substring(start, this.position);
+            }
+            if (c == '"' || c == '\'') {
+                this.position++;
+                while (this.position < this.text.length() && this.text.charAt(this.position) != c) {
+                    this.position += this.text.charAt(this.position) == '\\' ? 2 : 1;
+                }
+                this.position = Math.min(this.position + 1, this.text.length());
+                return this.text.substring(start, this.position);
+            }
+
+            // A path or a bare word. Brackets in a path may hold quoted names with spaces or operators in them.
+            char quote = 0;
+            int brackets = 0;
+            while (this.position < this.text.length()) {
+                char current = this.text.charAt(this.position);
+                if (quote != 0) {
+                    if (current == quote) {
+                        quote = 0;
+                    }
+                } else if (current == '\'' || current == '"') {
+                    quote = current;
+                } else if (current == '[') {
+                    brackets++;
+                } else if (current == ']') {
+                    brackets--;
+                } else if (brackets == 0
+                        && (Character.isWhitespace(current) || OPERATOR_CHARACTERS.indexOf(current) >= 0)) {
+                    break;
+                }
+                this.position++;
+            }
+            return this.text.substring(start, this.position);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class JsonPath {
+
+    private static final Logger logger = Logger.getLogger(JsonPath.class.getName());
+
+    private static final String MALFORMED_PATH_ERROR = "JSON path is malformed: ";
+
+    // A step matching any member of an object or any element of an array
+    private static final Object WILDCARD = new Object();
+
+    private final String expression;
+    // Member names as strings, array indexes as integers and wildcards
+    private final List<Object> steps;
+    private final boolean isDefinite;
+
+    private JsonPath(String expression, List<Object> steps) {
+        this.expression = expression;
+        this.steps = steps;
+        this.isDefinite = !steps.contains(WILDCARD);
+    }
+
+    // Parses the subset of JSONPath that can be matched while streaming: $ followed by .name, ['name'], [0], .* and
+    // [*] steps. Filters, slices and recursive descent would need the whole document so are not supported.
+    public static JsonPath parse(String expression) throws RESTException {
+        String path = expression.trim();
+        if (!path.startsWith("$")) {
+            throw malformed(expression);
+        }
+
+        List<Object> steps = new ArrayList<>();
+        int i = 1;
+        while (i < path.length()) {
+            char c = path.charAt(i);
+            if (c == '.') {
+                int start = ++i;
+                while (i < path.length() && path.charAt(i) != '.' && path.charAt(i) != '[') {
+                    i++;
+                }
+                String name = path.substring(start, i).trim();
+                if (name.isEmpty()) {
+                    throw malformed(expression);
+                }
+                steps.add(name.equals("*") ? WILDCARD : name);
+            } else if (c == '[') {
+                int end = findClosingBracket(path, i);
+                if (end < 0) {
+                    throw malformed(expression);
+                }
+                steps.add(parseBracket(path.substring(i + 1, end).trim(), expression));
+                i = end + 1;
+            } else {
+                throw malformed(expression);
+            }
+        }
+        return new JsonPath(expression, steps);
+    }
+
+    public String getExpression() {
+        return this.expression;
+    }
+
+    public int length() {
+        return this.steps.size();
+    }
+
+    // A definite path selects at most one value, otherwise it selects a list of every value it matches
+    public boolean isDefinite() {
+        return this.isDefinite;
+    }
+
+    // Whether the step at the given depth selects the object member with this name
+    public boolean matchesMember(int depth, String name) {
+        Object step = this.steps.get(depth);
+        return step == WILDCARD || name.equals(step);
+    }
+
+    // Whether the step at the given depth selects the array element at this index
+    public boolean matchesIndex(int depth, int index) {
+        Object step = this.steps.get(depth);
+        return step == WILDCARD || (step instanceof Integer && (Integer) step == index);
+    }
+
+    // Evaluates the steps from the given depth on a value that has already been read, adding whatever they select
+    public void select(Object value, int depth, List<Object> selected) {
+        if (depth == this.steps.size()) {
+            selected.add(value);
+            return;
+        }
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+                if (matchesMember(depth, String.valueOf(member.getKey()))) {
+                    select(member.getValue(), depth + 1, selected);
+                }
+            }
+        } else if (value instanceof List) {
+            List<?> elements = (List<?>) value;
+            for (int index = 0; index < elements.size(); index++) {
+                if (matchesIndex(depth, index)) {
+                    select(elements.get(index), depth + 1, selected);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.expression;
+    }
+
+    private static int findClosingBracket(String path, int open) {
+        char quote = 0;
+        for (int i = open + 1; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Object parseBracket(String step, String expression) throws RESTException {
+        if (step.equals("*")) {
+            return WILDCARD;
+        }
+        if (step.length() >= 2 && (step.charAt(0) == '\'' || step.charAt(0) == '"')
+                && step.charAt(step.length() - 1) == step.charAt(0)) {
+            return step.substring(1, step.length() - 1);
+        }
+        try {
+            int index = Integer.parseInt(step);
+            if (index >= 0) {
+                return index;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the error below
+        }
+        throw malformed(expression);
+    }
+
+    private static RESTException malformed(String expression) {
+        logger.severe(MALFORMED_PATH_ERROR + expression);
+        return new RESTException(MALFORMED_PATH_ERROR + "%s", expression);
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class JsonPathReader {
+
+    private static final Logger logger = Logger.getLogger(JsonPathReader.class.getName());
+
+    private static final String MALFORMED_JSON_ERROR_FMT = "Unable to read JSON response at character %d: %s";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Reads a JSON document once, from start to end, picking out the values selected by a set of paths as it goes.
+    // Only the selected values are ever built into objects. Everything else is skipped over without being kept, so
+    // the memory needed does not depend on the size of the document.
+    private final List<JsonPath> paths;
+    private final Object[] values;
+    private final boolean[] found;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private Reader reader;
+    private int position;
+    private int limit;
+    private long offset;
+    private BooleanSupplier isDone;
+    private boolean isStopped;
+
+    public JsonPathReader(List<JsonPath> paths) {
+        this.paths = paths;
+        this.values = new Object[paths.size()];
+        this.found = new boolean[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            if (!paths.get(i).isDefinite()) {
+                this.values[i] = new ArrayList<>();
+            }
+        }
+    }
+
+    // Reads the whole document
+    public boolean read(Reader reader) throws IOException, RESTException {
+        return read(reader, () -> false);
+    }
+
+    // Reads the document and returns true if it was read to the end. isDone is asked each time a value is found and
+    // once it returns true reading stops, leaving the rest of the document unread.
+    public boolean read(Reader reader, BooleanSupplier isDone) throws IOException, RESTException {
+        this.reader = reader;
+        this.isDone = isDone;
+
+        List<Integer> active = new ArrayList<>(this.paths.size());
+        for (int i = 0; i < this.paths.size(); i++) {
+            active.add(i);
+        }
+        if (peek() == '\uFEFF') {
+            // Skip a byte order mark left by the decoder
+            next();
+        }
+        skipWhitespace();
+        if (peek() == -1) {
+            // An empty body has no values to select
+            return true;
+        }
+        readValue(active, 0);
+        if (this.isStopped) {
+            return false;
+        }
+        skipWhitespace();
+        if (peek() != -1) {
+            throw malformed("unexpected content after the end of the document");
+        }
+        return true;
+    }
+
+    // Whether the path at this index selected anything
+    public boolean isFound(int index) {
+        return this.found[index];
+    }
+
+    // The value selected by a definite path, or the list of values selected by any other path
+    public Object getValue(int index) {
+        return this.values[index];
+    }
+
+    private void readValue(List<Integer> active, int depth) throws IOException, RESTException {
+        skipWhitespace();
+        if (active.isEmpty()) {
+            skipValue();
+            return;
+        }
+
+        // Build the value if a path ends here. Any longer path that goes through it is evaluated on the built value.
+        for (int index : active) {
+            if (this.paths.get(index).length() == depth) {
+                Object value = parseValue();
+                for (int selecting : active) {
+                    List<Object> selected = new ArrayList<>();
+                    this.paths.get(selecting).select(value, depth, selected);
+                    for (Object item : selected) {
+                        record(selecting, item);
+                    }
+                }
+                return;
+            }
+        }
+
+        int c = peek();
+        if (c == '{') {
+            readObject(active, depth);
+        } else if (c == '[') {
+            readArray(active, depth);
+        } else {
+            skipValue();
+        }
+    }
+
+    private void readObject(List<Integer> active, int depth) throws IOException, RESTException {
+        next();
+        skipWhitespace();
+        if (peek() == '}') {
+            next();
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+
+            List<Integer> matching = new ArrayList<>(active.size());
+            for (int index : active) {
+                if (this.paths.get(index).matchesMember(depth, name)) {
+                    matching.add(index);
+                }
+            }
+            readValue(matching, depth + 1);
+            if (this.isStopped) {
+                return;
+            }
+
+            skipWhitespace();
+            int c = next();
+            if (c == '}') {
+                return;
+            }
+            if (c != ',') {
+                throw malformed("expected , or } in object");
+            }
+        }
+    }
+
+    private void readArray(List<Integer> active, int depth) throws IOException, RESTException {
+        next();
+        skipWhitespace();
+        if (peek() == ']') {
+            next();
+            return;
+        }
+        for (int element = 0; ; element++) {
+            List<Integer> matching = new ArrayList<>(active.size());
+            for (int index : active) {
+                if (this.paths.get(index).matchesIndex(depth, element)) {
+                    matching.add(index);
+                }
+            }
+            readValue(matching, depth + 1);
+            if (this.isStopped) {
+                return;
+            }
+
+            skipWhitespace();
+            int c = next();
+            if (c == ']') {
+                return;
+            }
+            if (c != ',') {
+                throw malformed("expected , or ] in array");
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void record(int index, Object value) {
+        if (!this.paths.get(index).isDefinite()) {
+            ((List<Object>) this.values[index]).add(value);
+        } else if (!this.found[index]) {
+            this.values[index] = value;
+        } else {
+            // A definite path keeps the first value it selects
+            return;
+        }
+        this.found[index] = true;
+        if (this.isDone.getAsBoolean()) {
+            this.isStopped = true;
+        }
+    }
+
+    private Object parseValue() throws IOException, RESTException {
+        skipWhitespace();
+        int c = peek();
+        switch (c) {
+            case '{': {
+                next();
+                Map<String, Object> object = new LinkedHashMap<>();
+                skipWhitespace();
+                if (peek() == '}') {
+                    next();
+                    return object;
+                }
+                while (true) {
+                    skipWhitespace();
+                    String name = readString();
+                    skipWhitespace();
+                    expect(':');
+                    object.put(name, parseValue());
+                    skipWhitespace();
+                    int separator = next();
+                    if (separator == '}') {
+                        return object;
+                    }
+                    if (separator != ',') {
+                        throw malformed("expected , or } in object");
+                    }
+                }
+            }
+            case '[': {
+                next();
+                List<Object> array = new ArrayList<>();
+                skipWhitespace();
+                if (peek() == ']') {
+                    next();
+                    return array;
+                }
+                while (true) {
+                    array.add(parseValue());
+                    skipWhitespace();
+                    int separator = next();
+                    if (separator == ']') {
+                        return array;
+                    }
+                    if (separator != ',') {
+                        throw malformed("expected , or ] in array");
+                    }
+                }
+            }
+            case '"':
+                return readString();
+            default:
+                return parseLiteral(readLiteral());
+        }
+    }
+
+    private Object parseLiteral(String literal) throws RESTException {
+        switch (literal) {
+            case "true":
+                return Boolean.TRUE;
+            case "false":
+                return Boolean.FALSE;
+            case "null":
+                return null;
+            default:
+                break;
+        }
+        try {
+            if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+                try {
+                    return Long.parseLong(literal);
+                } catch (NumberFormatException e) {
+                    // Too large for a long
+                }
+            }
+            return Double.parseDouble(literal);
+        } catch (NumberFormatException e) {
+            throw malformed("unexpected value " + literal);
+        }
+    }
+
+    private void skipValue() throws IOException, RESTException {
+        int c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            // Skip to the matching bracket without looking at what is inside, other than strings which may contain
+            // brackets of their own
+            int nesting = 0;
+            do {
+                c = peek();
+                if (c == -1) {
+                    throw malformed("unexpected end of document");
+                }
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                next();
+                if (c == '{' || c == '[') {
+                    nesting++;
+                } else if (c == '}' || c == ']') {
+                    nesting--;
+                }
+            } while (nesting > 0);
+        } else {
+            int length = 0;
+            while ((c = peek()) != -1 && !isDelimiter(c)) {
+                next();
+                length++;
+            }
+            if (length == 0) {
+                throw malformed(c == -1 ? "unexpected end of document" : "unexpected character " + (char) c);
+            }
+        }
+    }
+
+    private String readLiteral() throws IOException, RESTException {
+        StringBuilder literal = new StringBuilder();
+        int c;
+        while ((c = peek()) != -1 && !isDelimiter(c)) {
+            literal.append((char) next());
+        }
+        if (literal.length() == 0) {
+            throw malformed(c == -1 ? "unexpected end of document" : "unexpected character " + (char) c);
+        }
+        return literal.toString();
+    }
+
+    private String readString() throws IOException, RESTException {
+        expect('"');
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            int c = next();
+            if (c == -1) {
+                throw malformed("unexpected end of document in string");
+            }
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+            int escaped = next();
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    text.append((char) escaped);
+                    break;
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(next(), 16);
+                        if (digit < 0) {
+                            throw malformed("malformed unicode escape in string");
+                        }
+                        code = code * 16 + digit;
+                    }
+                    text.append((char) code);
+                    break;
+                default:
+                    throw malformed("malformed escape in string");
+            }
+        }
+    }
+
+    private void skipString() throws IOException, RESTException {
+        expect('"');
+        while (true) {
+            int c = next();
+            if (c == -1) {
+                throw malformed("unexpected end of document in string");
+            }
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                next();
+            }
+        }
+    }
+
+    private static boolean isDelimiter(int c) {
+        return c == ',' || c == '}' || c == ']' || c == ':' || c == '"' || c == '{' || c == '['
+                || Character.isWhitespace(c);
+    }
+
+    private void skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) != -1 && Character.isWhitespace(c)) {
+            next();
+        }
+    }
+
+    private void expect(char expected) throws IOException, RESTException {
+        int c = next();
+        if (c != expected) {
+            throw malformed(c == -1 ? "unexpected end of document" : "expected " + expected + " but found " + (char) c);
+        }
+    }
+
+    private int peek() throws IOException {
+        if (this.position == this.limit) {
+            int read = this.reader.read(this.buffer, 0, this.buffer.length);
+            if (read <= 0) {
+                return -1;
+            }
+            this.offset += this.limit;
+            this.position = 0;
+            this.limit = read;
+        }
+        return this.buffer[this.position];
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            this.position++;
+        }
+        return c;
+    }
+
+    private RESTException malformed(String reason) {
+        String error = String.format(MALFORMED_JSON_ERROR_FMT, this.offset + this.position, reason);
+        logger.severe(error);
+        return new RESTException("%s", error);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class JsonWriter {
+
+    private JsonWriter() {
+    }
+
+    // Writes values as read by JsonPathReader, that is maps, lists, strings, numbers, booleans and null, back to JSON
+    public static String write(Object value) {
+        StringBuilder json = new StringBuilder();
+        write(value, json);
+        return json.toString();
+    }
+
+    public static void write(Object value, StringBuilder json) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof String) {
+            writeString((String) value, json);
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            json.append(Double.isNaN(number) || Double.isInfinite(number) ? "null" : String.valueOf(value));
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else if (value instanceof Map) {
+            json.append('{');
+            Iterator<? extends Map.Entry<?, ?>> members = ((Map<?, ?>) value).entrySet().iterator();
+            while (members.hasNext()) {
+                Map.Entry<?, ?> member = members.next();
+                writeString(String.valueOf(member.getKey()), json);
+                json.append(':');
+                write(member.getValue(), json);
+                if (members.hasNext()) {
+                    json.append(',');
+                }
+            }
+            json.append('}');
+        } else if (value instanceof List) {
+            json.append('[');
+            Iterator<?> elements = ((List<?>) value).iterator();
+            while (elements.hasNext()) {
+                write(elements.next(), json);
+                if (elements.hasNext()) {
+                    json.append(',');
+                }
+            }
+            json.append(']');
+        } else {
+            writeString(value.toString(), json);
+        }
+    }
+
+    private static void writeString(String text, StringBuilder json) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                    break;
+            }
+        }
+        json.append('"');
+    }
+}
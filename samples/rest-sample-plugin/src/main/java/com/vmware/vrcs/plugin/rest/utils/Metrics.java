@@ -0,0 +1,316 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+public class Metrics {
+
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+
+    // Timers record nanoseconds and report milliseconds
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private static final String[] STATUS_CLASSES = { "1xx", "2xx", "3xx", "4xx", "5xx" };
+
+    // Measurements by route, that is scheme, host and port, the same as the connection pool, along with named counters,
+    // histograms and timers for anything else worth watching. Everything is recorded with atomic adds so that measuring
+    // a request costs next to nothing and never makes one request wait on another.
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public Metrics() {
+        this(Long.getLong("com.vmware.vrcs.plugin.rest.metricsLogSeconds", 0L));
+    }
+
+    // Logs a snapshot every logSeconds if that is more than 0, for servers where nothing scrapes the metrics
+    public Metrics(long logSeconds) {
+        if (logSeconds > 0) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "rest-client-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(() -> logger.info("REST client metrics:\n" + toText()), logSeconds,
+                    logSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public Route getRoute(URL url) {
+        return this.routes.computeIfAbsent(ConnectionPool.getRouteKey(url), Route::new);
+    }
+
+    public LongAdder getCounter(String name) {
+        return this.counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public Histogram getHistogram(String name) {
+        return this.histograms.computeIfAbsent(name, key -> new Histogram(1));
+    }
+
+    // A histogram of durations recorded in nanoseconds, reported in milliseconds
+    public Histogram getTimer(String name) {
+        return this.histograms.computeIfAbsent(name, key -> new Histogram(NANOS_PER_MILLI));
+    }
+
+    public List<RouteStats> getStats() {
+        List<RouteStats> stats = new ArrayList<>();
+        this.routes.values().forEach(route -> stats.add(new RouteStats(route)));
+        return stats;
+    }
+
+    // One line per route and per named metric, in the same key=value form as the rest of the stats, with times in ms
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        new TreeMap<>(this.routes).values().forEach(route -> text.append(new RouteStats(route)).append('\n'));
+        new TreeMap<>(this.counters).forEach((name, counter) -> text.append(name).append(" count=")
+                .append(counter.sum()).append('\n'));
+        new TreeMap<>(this.histograms).forEach((name, histogram) -> text.append(name).append(' ')
+                .append(histogram.getSnapshot()).append('\n'));
+        return text.toString();
+    }
+
+    // The same snapshot as a JSON object with routes, counters and histograms members, for collectors to scrape
+    public String toJson() {
+        Map<String, Object> routes = new LinkedHashMap<>();
+        new TreeMap<>(this.routes).forEach((key, route) -> routes.put(key, new RouteStats(route).toMap()));
+        Map<String, Object> counters = new LinkedHashMap<>();
+        new TreeMap<>(this.counters).forEach((name, counter) -> counters.put(name, counter.sum()));
+        Map<String, Object> histograms = new LinkedHashMap<>();
+        new TreeMap<>(this.histograms).forEach((name, histogram) -> histograms.put(name,
+                toMap(histogram.getSnapshot())));
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("routes", routes);
+        json.put("counters", counters);
+        json.put("histograms", histograms);
+        return JsonWriter.write(json);
+    }
+
+    public void reset() {
+        this.routes.clear();
+        this.counters.clear();
+        this.histograms.clear();
+    }
+
+    private static Map<String, Object> toMap(Histogram.Snapshot snapshot) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", snapshot.getCount());
+        map.put("mean", round(snapshot.getMean()));
+        map.put("p50", round(snapshot.getP50()));
+        map.put("p90", round(snapshot.getP90()));
+        map.put("p99", round(snapshot.getP99()));
+        map.put("p999", round(snapshot.getP999()));
+        map.put("max", round(snapshot.getMax()));
+        return map;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    public static class Route {
+        private final String key;
+        private final Histogram connect = new Histogram(NANOS_PER_MILLI);
+        private final Histogram tls = new Histogram(NANOS_PER_MILLI);
+        private final Histogram firstByte = new Histogram(NANOS_PER_MILLI);
+        private final Histogram body = new Histogram(NANOS_PER_MILLI);
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LongAdder[] statuses = new LongAdder[STATUS_CLASSES.length];
+        private final LongAdder errors = new LongAdder();
+
+        private Route(String key) {
+            this.key = key;
+            for (int i = 0; i < this.statuses.length; i++) {
+                this.statuses[i] = new LongAdder();
+            }
+        }
+
+        // Opening the connection, including looking up the host but not the TLS handshake. A socket reused from the
+        // keep-alive cache takes next to no time, so the spread shows how often connections are reused.
+        public void recordConnect(long nanos) {
+            this.connect.record(nanos);
+        }
+
+        public void recordTls(long nanos) {
+            this.tls.record(nanos);
+        }
+
+        // From sending the request to having the status and headers of the response
+        public void recordFirstByte(long nanos) {
+            this.firstByte.record(nanos);
+        }
+
+        public void recordBody(long nanos) {
+            this.body.record(nanos);
+        }
+
+        public void addBytesIn(long bytes) {
+            this.bytesIn.add(bytes);
+        }
+
+        public void addBytesOut(long bytes) {
+            this.bytesOut.add(bytes);
+        }
+
+        public void recordStatus(int status) {
+            int statusClass = status / 100 - 1;
+            if (statusClass >= 0 && statusClass < this.statuses.length) {
+                this.statuses[statusClass].increment();
+            }
+        }
+
+        // A request that failed without a response
+        public void recordError() {
+            this.errors.increment();
+        }
+
+        // Counts the bytes read from the stream, as they come off the wire before any decoding
+        public InputStream countBytesIn(InputStream inputStream) {
+            return new FilterInputStream(inputStream) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        bytesIn.increment();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int count = super.read(buffer, offset, length);
+                    if (count > 0) {
+                        bytesIn.add(count);
+                    }
+                    return count;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long count = super.skip(n);
+                    bytesIn.add(count);
+                    return count;
+                }
+            };
+        }
+    }
+
+    public static class RouteStats {
+        private final String route;
+        private final long[] statuses = new long[STATUS_CLASSES.length];
+        private final long errors;
+        private final long bytesIn;
+        private final long bytesOut;
+        private final Histogram.Snapshot connect;
+        private final Histogram.Snapshot tls;
+        private final Histogram.Snapshot firstByte;
+        private final Histogram.Snapshot body;
+
+        private RouteStats(Route route) {
+            this.route = route.key;
+            for (int i = 0; i < this.statuses.length; i++) {
+                this.statuses[i] = route.statuses[i].sum();
+            }
+            this.errors = route.errors.sum();
+            this.bytesIn = route.bytesIn.sum();
+            this.bytesOut = route.bytesOut.sum();
+            this.connect = route.connect.getSnapshot();
+            this.tls = route.tls.getSnapshot();
+            this.firstByte = route.firstByte.getSnapshot();
+            this.body = route.body.getSnapshot();
+        }
+
+        public String getRoute() {
+            return this.route;
+        }
+
+        // Responses with a status of 100 times statusClass up to the next hundred, such as 2 for 2xx
+        public long getStatusCount(int statusClass) {
+            return statusClass >= 1 && statusClass <= this.statuses.length ? this.statuses[statusClass - 1] : 0;
+        }
+
+        public long getErrors() {
+            return this.errors;
+        }
+
+        public long getBytesIn() {
+            return this.bytesIn;
+        }
+
+        public long getBytesOut() {
+            return this.bytesOut;
+        }
+
+        public Histogram.Snapshot getConnect() {
+            return this.connect;
+        }
+
+        public Histogram.Snapshot getTls() {
+            return this.tls;
+        }
+
+        public Histogram.Snapshot getFirstByte() {
+            return this.firstByte;
+        }
+
+        public Histogram.Snapshot getBody() {
+            return this.body;
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < STATUS_CLASSES.length; i++) {
+                map.put(STATUS_CLASSES[i], this.statuses[i]);
+            }
+            map.put("errors", this.errors);
+            map.put("bytesIn", this.bytesIn);
+            map.put("bytesOut", this.bytesOut);
+            map.put("connect", Metrics.toMap(this.connect));
+            map.put("tls", Metrics.toMap(this.tls));
+            map.put("firstByte", Metrics.toMap(this.firstByte));
+            map.put("body", Metrics.toMap(this.body));
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(this.route);
+            for (int i = 0; i < STATUS_CLASSES.length; i++) {
+                text.append(' ').append(STATUS_CLASSES[i]).append('=').append(this.statuses[i]);
+            }
+            text.append(" errors=").append(this.errors).append(" bytesIn=").append(this.bytesIn)
+                    .append(" bytesOut=").append(this.bytesOut);
+            text.append(String.format("\n%s connect %s", this.route, this.connect));
+            text.append(String.format("\n%s tls %s", this.route, this.tls));
+            text.append(String.format("\n%s firstByte %s", this.route, this.firstByte));
+            text.append(String.format("\n%s body %s", this.route, this.body));
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.OnOversize;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTRequest;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTResponse;
+
+public class Paginator {
+
+    private static final Logger logger = Logger.getLogger(Paginator.class.getName());
+
+    private static final String BAD_MODE_ERROR = "Pagination must be one of none, link or cursor.";
+    private static final String CURSOR_PARAMETERS_ERROR = "Cursor pagination needs both a cursor path and a cursor parameter.";
+    private static final String PAGE_FAILED_ERROR_FMT = "Pagination stopped because page %d returned status %d";
+    private static final String PAGES_EXCEEDED_ERROR_FMT = "Unable to collect pages as they exceed 4MB after %d pages";
+    private static final String PAGE_READ_ERROR = "Unable to read page: ";
+    private static final String PAGE_INTERRUPTED_ERROR = "Interrupted while waiting for the next page";
+
+    // The aggregated pages become the responseBody output, which is limited to 4MB like any other output
+    private static final int MAX_AGGREGATE_BYTES = 4 * 1024 * 1024;
+
+    public enum Mode {
+        // Only the first page
+        NONE,
+        // Follow the URL in a Link header with rel="next"
+        LINK,
+        // Send the value found at the cursor path of each page as a query parameter of the next request
+        CURSOR
+    }
+
+    private final Mode mode;
+    private final JsonPath cursorPath;
+    private final String cursorParameter;
+    private final JsonPath itemsPath;
+    private final int pageLimit;
+    private final boolean isPrefetch;
+
+    public Paginator(String mode, String cursorPath, String cursorParameter, String itemsPath, int pageLimit,
+            boolean isPrefetch) throws RESTException {
+        try {
+            this.mode = Mode.valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.severe(BAD_MODE_ERROR);
+            throw new RESTException(BAD_MODE_ERROR, e);
+        }
+        if (this.mode == Mode.CURSOR && (cursorPath.trim().isEmpty() || cursorParameter.trim().isEmpty())) {
+            logger.severe(CURSOR_PARAMETERS_ERROR);
+            throw new RESTException(CURSOR_PARAMETERS_ERROR);
+        }
+        this.cursorPath = this.mode == Mode.CURSOR ? JsonPath.parse(cursorPath) : null;
+        this.cursorParameter = cursorParameter.trim();
+        this.itemsPath = JsonPath.parse(itemsPath.trim().isEmpty() ? "$" : itemsPath);
+        this.pageLimit = Math.max(1, pageLimit);
+        this.isPrefetch = isPrefetch;
+    }
+
+    public boolean isEnabled() {
+        return this.mode != Mode.NONE;
+    }
+
+    // Follows the pages on from the first response, which was the answer to the given request, and gathers the items of
+    // every page into one JSON array. A first page that did not succeed is returned as it is, for the caller to treat
+    // like any other unexpected response.
+    public Result collect(RESTRequest request, RESTResponse first) throws RESTException {
+        if (first.getStatus() >= 300) {
+            return new Result(first, first.getBody(), 1, false, false);
+        }
+
+        StringBuilder aggregate = new StringBuilder("[");
+        long aggregateBytes = 2;
+        boolean isFirstItem = true;
+        RESTRequest pageRequest = request;
+        RESTResponse page = first;
+        int pageCount = 0;
+        CompletableFuture<RESTResponse> prefetched = null;
+        while (true) {
+            pageCount++;
+            if (page.getStatus() >= 300) {
+                String error = String.format(PAGE_FAILED_ERROR_FMT, pageCount, page.getStatus());
+                logger.severe(error);
+                throw new RESTException(error);
+            }
+
+            // The next link is known from the headers alone, so the next page can be on its way while this one is read
+            RESTRequest nextRequest = this.mode == Mode.LINK ? nextLinkRequest(request, pageRequest, page) : null;
+            if (nextRequest != null && this.isPrefetch && pageCount < this.pageLimit) {
+                prefetched = RESTClient.executeAsync(nextRequest);
+            }
+
+            Page contents = readPage(page.getBody());
+            if (this.mode == Mode.CURSOR) {
+                nextRequest = nextCursorRequest(request, contents.cursor);
+            }
+
+            // Only whole items are added so that the aggregate stays valid JSON even when it has to be cut short
+            for (Object item : contents.items) {
+                String json = JsonWriter.write(item);
+                long itemBytes = json.getBytes(StandardCharsets.UTF_8).length + (isFirstItem ? 0 : 1);
+                if (aggregateBytes + itemBytes > MAX_AGGREGATE_BYTES) {
+                    cancel(prefetched);
+                    if (request.getOnOversize() == OnOversize.FAIL) {
+                        String error = String.format(PAGES_EXCEEDED_ERROR_FMT, pageCount);
+                        logger.severe(error);
+                        throw new RESTException(error);
+                    }
+                    logger.info(String.format("Truncating pages because they exceed 4MB after %d pages", pageCount));
+                    return new Result(page, aggregate.append(']').toString(), pageCount, true, true);
+                }
+                aggregate.append(isFirstItem ? "" : ",").append(json);
+                aggregateBytes += itemBytes;
+                isFirstItem = false;
+            }
+
+            if (nextRequest == null) {
+                logger.info(String.format("Collected %d pages", pageCount));
+                return new Result(page, aggregate.append(']').toString(), pageCount, false, false);
+            }
+            if (pageCount >= this.pageLimit) {
+                logger.info(String.format("Stopped collecting pages at the limit of %d pages", this.pageLimit));
+                cancel(prefetched);
+                return new Result(page, aggregate.append(']').toString(), pageCount, true, false);
+            }
+
+            pageRequest = nextRequest;
+            page = prefetched != null ? await(prefetched) : RESTClient.execute(nextRequest);
+            prefetched = null;
+        }
+    }
+
+    private Page readPage(String body) throws RESTException {
+        List<JsonPath> paths = this.cursorPath != null ? Arrays.asList(this.itemsPath, this.cursorPath)
+                : Arrays.asList(this.itemsPath);
+        JsonPathReader reader = new JsonPathReader(paths);
+        try {
+            reader.read(new StringReader(body));
+        } catch (IOException e) {
+            // Not expected when reading from a string
+            logger.severe(PAGE_READ_ERROR + e);
+            throw new RESTException(PAGE_READ_ERROR + e.getMessage(), e);
+        }
+
+        // Arrays are flattened so that the items of every page end up side by side in one array
+        Page contents = new Page();
+        List<Object> items = contents.items;
+        if (reader.isFound(0)) {
+            Object selected = reader.getValue(0);
+            if (this.itemsPath.isDefinite()) {
+                selected = Arrays.asList(selected);
+            }
+            for (Object value : (List<?>) selected) {
+                if (value instanceof List) {
+                    items.addAll((List<?>) value);
+                } else {
+                    items.add(value);
+                }
+            }
+        }
+        if (this.cursorPath != null && reader.isFound(1)) {
+            // The last page has no cursor, or an empty one
+            Object cursor = reader.getValue(1);
+            if (cursor instanceof String || cursor instanceof Number) {
+                contents.cursor = String.valueOf(cursor).isEmpty() ? null : String.valueOf(cursor);
+            }
+        }
+        return contents;
+    }
+
+    private static RESTRequest nextLinkRequest(RESTRequest request, RESTRequest pageRequest, RESTResponse page)
+            throws RESTException {
+        String link = getNextLink(page.getHeader("Link"));
+        if (link == null) {
+            return null;
+        }
+        URL next;
+        try {
+            next = new URL(pageRequest.getUrl(), link);
+        } catch (MalformedURLException e) {
+            logger.warning("Ignoring malformed next link: " + link);
+            return null;
+        }
+
+        // The request carries the endpoint credentials, so never follow a link to another server
+        URL origin = request.getUrl();
+        if (!next.getProtocol().equalsIgnoreCase(origin.getProtocol()) || !next.getHost().equalsIgnoreCase(origin.getHost())
+                || next.getPort() != origin.getPort()) {
+            logger.warning("Not following next link to another server: " + next);
+            return null;
+        }
+        return request.copyWithPath(next.toString());
+    }
+
+    private RESTRequest nextCursorRequest(RESTRequest request, String cursor) throws RESTException {
+        if (cursor == null) {
+            return null;
+        }
+        // Replace the cursor parameter of the original path, keeping the rest of its query
+        String path = request.getPath();
+        int fragment = path.indexOf('#');
+        if (fragment >= 0) {
+            path = path.substring(0, fragment);
+        }
+        int query = path.indexOf('?');
+        StringBuilder next = new StringBuilder(query >= 0 ? path.substring(0, query) : path);
+        char separator = '?';
+        if (query >= 0) {
+            for (String parameter : path.substring(query + 1).split("&")) {
+                String name = parameter.split("=", 2)[0];
+                if (!parameter.isEmpty() && !name.equals(this.cursorParameter)) {
+                    next.append(separator).append(parameter);
+                    separator = '&';
+                }
+            }
+        }
+        try {
+            next.append(separator).append(URLEncoder.encode(this.cursorParameter, "UTF-8"))
+                    .append('=').append(URLEncoder.encode(cursor, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+        return request.copyWithPath(next.toString());
+    }
+
+    // The target of the rel="next" entry of a Link header such as <https://host/items?page=2>; rel="next"
+    private static String getNextLink(String header) {
+        if (header == null) {
+            return null;
+        }
+        int start = header.indexOf('<');
+        while (start >= 0) {
+            int end = header.indexOf('>', start);
+            if (end < 0) {
+                return null;
+            }
+            int following = header.indexOf('<', end);
+            String parameters = header.substring(end + 1, following >= 0 ? following : header.length());
+            for (String parameter : parameters.split("[;,]")) {
+                String[] pair = parameter.trim().split("=", 2);
+                if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("rel")) {
+                    for (String rel : pair[1].replace("\"", "").trim().split("\\s+")) {
+                        if (rel.equalsIgnoreCase("next")) {
+                            return header.substring(start + 1, end).trim();
+                        }
+                    }
+                }
+            }
+            start = following;
+        }
+        return null;
+    }
+
+    private static RESTResponse await(CompletableFuture<RESTResponse> future) throws RESTException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.severe(PAGE_INTERRUPTED_ERROR);
+            throw new RESTException(PAGE_INTERRUPTED_ERROR, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RESTException) {
+                throw (RESTException) e.getCause();
+            }
+            logger.severe(PAGE_READ_ERROR + e.getCause());
+            throw new RESTException(PAGE_READ_ERROR + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static void cancel(CompletableFuture<RESTResponse> future) {
+        // A page that has already been sent is simply read and dropped
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private static class Page {
+        private final List<Object> items = new ArrayList<>();
+        // Only set when paginating by cursor and there is a next page
+        private String cursor;
+    }
+
+    public static class Result {
+        private final RESTResponse lastPage;
+        private final String body;
+        private final int pageCount;
+        private final boolean hasMorePages;
+        private final boolean truncated;
+
+        private Result(RESTResponse lastPage, String body, int pageCount, boolean hasMorePages, boolean truncated) {
+            this.lastPage = lastPage;
+            this.body = body;
+            this.pageCount = pageCount;
+            this.hasMorePages = hasMorePages;
+            this.truncated = truncated;
+        }
+
+        // The status and headers of the last page read
+        public RESTResponse getLastPage() {
+            return this.lastPage;
+        }
+
+        // A JSON array of the items of every page
+        public String getBody() {
+            return this.body;
+        }
+
+        public int getPageCount() {
+            return this.pageCount;
+        }
+
+        // Whether pages were left unread because of the page limit or the size limit
+        public boolean hasMorePages() {
+            return this.hasMorePages;
+        }
+
+        public boolean isTruncated() {
+            return this.truncated;
+        }
+    }
+}
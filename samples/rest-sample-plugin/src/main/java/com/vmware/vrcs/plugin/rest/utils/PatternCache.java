@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+public class PatternCache {
+
+    private static final Logger logger = Logger.getLogger(PatternCache.class.getName());
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private static final PatternCache shared = new PatternCache(DEFAULT_MAX_SIZE);
+
+    // Compiled expressions keyed by flags and expression, least recently used first. Tiles keep matching the same few
+    // expressions on every poll so a small cache is enough to avoid compiling them again.
+    private final Map<String, Expression> expressions;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final int maxSize;
+
+    public PatternCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.expressions = new LinkedHashMap<String, Expression>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Expression> eldest) {
+                return size() > PatternCache.this.maxSize;
+            }
+        };
+    }
+
+    public static PatternCache getShared() {
+        return shared;
+    }
+
+    public Expression get(String expression) {
+        return get(expression, 0);
+    }
+
+    public Expression get(String expression, int flags) {
+        String key = flags + ":" + expression;
+        Expression compiled;
+        synchronized (this.expressions) {
+            compiled = this.expressions.get(key);
+        }
+        if (compiled != null) {
+            this.hits.increment();
+            return compiled;
+        }
+
+        // Compile outside the lock so that a large expression does not hold up lookups of the others. Two threads
+        // missing on the same expression at once simply both compile it.
+        this.misses.increment();
+        compiled = compile(expression, flags);
+        synchronized (this.expressions) {
+            this.expressions.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public int getSize() {
+        synchronized (this.expressions) {
+            return this.expressions.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d/%d hits=%d misses=%d", getSize(), this.maxSize, getHits(), getMisses());
+    }
+
+    private static Expression compile(String expression, int flags) {
+        // Plain text, or plain text anchored to the start, does not need the regex engine at all
+        if (flags == 0 || flags == Pattern.LITERAL) {
+            if (flags == Pattern.LITERAL || isLiteral(expression, 0)) {
+                return new Expression(expression, null, false);
+            }
+            if (expression.startsWith("^") && isLiteral(expression, 1)) {
+                return new Expression(expression.substring(1), null, true);
+            }
+        }
+        logger.fine("Compiling response pattern " + expression);
+        return new Expression(expression, Pattern.compile(expression, flags), false);
+    }
+
+    private static boolean isLiteral(String expression, int start) {
+        for (int i = start; i < expression.length(); i++) {
+            if (REGEX_METACHARACTERS.indexOf(expression.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static class Expression {
+        private final String literal;
+        private final Pattern pattern;
+        private final boolean isPrefix;
+
+        private Expression(String literal, Pattern pattern, boolean isPrefix) {
+            this.literal = literal;
+            this.pattern = pattern;
+            this.isPrefix = isPrefix;
+        }
+
+        // Same result as Pattern.matcher(input).find() for the expression this was created from
+        public boolean find(String input) {
+            if (this.pattern != null) {
+                return this.pattern.matcher(input).find();
+            }
+            return this.isPrefix ? input.startsWith(this.literal) : input.contains(this.literal);
+        }
+
+        public boolean isCompiled() {
+            return this.pattern != null;
+        }
+    }
+}
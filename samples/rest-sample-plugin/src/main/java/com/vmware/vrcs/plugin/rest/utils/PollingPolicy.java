@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class PollingPolicy {
+
+    private static final Logger logger = Logger.getLogger(PollingPolicy.class.getName());
+
+    private static final String BAD_STRATEGY_ERROR = "Poll strategy is not supported.";
+    private static final String BAD_JITTER_ERROR = "Poll jitter must be between 0 and 100 percent.";
+
+    public enum Strategy {
+        FIXED,
+        EXPONENTIAL,
+        FIBONACCI
+    }
+
+    private final Strategy strategy;
+    private final int initialInterval;
+    private final int maxInterval;
+    private final int jitterPercent;
+
+    public PollingPolicy(String strategy, int initialInterval, int maxInterval, int jitterPercent) throws RESTException {
+        try {
+            this.strategy = Strategy.valueOf(strategy.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.severe(BAD_STRATEGY_ERROR);
+            throw new RESTException(BAD_STRATEGY_ERROR, e);
+        }
+        if (jitterPercent < 0 || jitterPercent > 100) {
+            logger.severe(BAD_JITTER_ERROR);
+            throw new RESTException(BAD_JITTER_ERROR);
+        }
+        this.initialInterval = Math.max(1, initialInterval);
+        this.maxInterval = Math.max(this.initialInterval, maxInterval);
+        this.jitterPercent = jitterPercent;
+    }
+
+    // The interval to wait after the given one, before jitter. The previous interval is only used by the fibonacci
+    // strategy and is 0 before the first poll.
+    public int nextInterval(int interval, int previousInterval) {
+        long next;
+        switch (this.strategy) {
+            case EXPONENTIAL:
+                next = (long) interval * 2;
+                break;
+            case FIBONACCI:
+                next = (long) interval + previousInterval;
+                break;
+            default:
+                next = this.initialInterval;
+                break;
+        }
+        return (int) Math.min(Math.max(next, this.initialInterval), this.maxInterval);
+    }
+
+    // Spread the interval by up to the jitter percentage either way so that many tasks started together do not keep
+    // polling the server at the same moment
+    public int applyJitter(int interval) {
+        if (this.jitterPercent == 0) {
+            return interval;
+        }
+        double spread = interval * this.jitterPercent / 100.0;
+        double jittered = interval + ThreadLocalRandom.current().nextDouble(-spread, spread);
+        return (int) Math.max(1, Math.round(jittered));
+    }
+
+    public int getInitialInterval() {
+        return this.initialInterval;
+    }
+
+    // The delay requested by a Retry-After header given either in seconds or as an HTTP date, or -1 if there is none
+    // or it cannot be parsed
+    public static int getRetryAfterSeconds(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
+        String value = retryAfter.trim();
+        try {
+            return (int) Math.max(0, Math.min(Integer.MAX_VALUE, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds so try a date
+        }
+        try {
+            Instant retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return (int) Math.max(0, retryAt.getEpochSecond() - Instant.now().getEpochSecond());
+        } catch (DateTimeParseException e) {
+            logger.warning("Ignoring malformed Retry-After header: " + value);
+            return -1;
+        }
+    }
+}
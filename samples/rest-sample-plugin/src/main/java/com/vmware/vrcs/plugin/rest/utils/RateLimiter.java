@@ -0,0 +1,378 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTResponse;
+
+public class RateLimiter {
+
+    private static final Logger logger = Logger.getLogger(RateLimiter.class.getName());
+
+    private static final String RATE_WAIT_ERROR_FMT = "Rate limit for %s would hold the request for %d ms, longer than it may wait";
+    private static final String CONCURRENCY_WAIT_ERROR_FMT = "Timed out after %d ms waiting for one of the %d requests in flight to %s";
+    private static final String WAIT_INTERRUPTED_ERROR = "Interrupted while waiting for the rate limit of ";
+
+    // How long a request queues for its turn when it has no deadline of its own
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 60000L;
+
+    // A 429 without any header saying how long to back off pauses the route for this long
+    private static final long DEFAULT_PAUSE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Reset values above this are a time in epoch seconds rather than a number of seconds from now
+    private static final long EPOCH_RESET_THRESHOLD = 1000000000L;
+
+    // Limits by route, that is scheme, host and port, the same as the connection pool, and by the configured limits.
+    // Endpoints on the same server may be given different limits, so each set of limits has its own token bucket that
+    // holds up to a second's worth of requests and refills at the configured rate, and its own bulkhead that bounds the
+    // requests in flight, rather than the endpoints resetting each other's. Requests over either limit queue for their
+    // turn rather than fail, up to a bounded wait. Every limit on a route also follows what the server says about its
+    // own limit in RateLimit headers and Retry-After, so that many tasks against one server slow down before it starts
+    // turning requests away rather than after.
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<>();
+
+    // Waits until the request may be sent, for at most maxWaitMillis. Close the permit once the response has been
+    // read, after passing it to adapt.
+    public Permit acquire(URL url, double rateLimit, int maxConcurrency, long maxWaitMillis) throws RESTException {
+        String key = ConnectionPool.getRouteKey(url);
+        double rate = Math.max(0, rateLimit);
+        int concurrency = Math.max(0, maxConcurrency);
+        Limit limit = this.limits.computeIfAbsent(key + ' ' + rate + ' ' + concurrency,
+                limitKey -> new Limit(this.routes.computeIfAbsent(key, Route::new), rate, concurrency));
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        try {
+            // Look again after each wait, as the server may have asked for a lower rate or a pause in the meantime
+            boolean isDelayed = false;
+            long waitNanos;
+            while ((waitNanos = limit.tryTake(System.nanoTime())) > 0) {
+                if (waitNanos > endNanos - System.nanoTime()) {
+                    limit.rejected.increment();
+                    String error = String.format(RATE_WAIT_ERROR_FMT, key, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                    logger.severe(error);
+                    throw new RESTException("%s", error);
+                }
+                if (!isDelayed) {
+                    logger.info(String.format("Holding request to %s for %d ms to keep within its rate limit", key,
+                            TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+                    limit.delayed.increment();
+                    isDelayed = true;
+                }
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            if (limit.bulkhead != null && !limit.bulkhead.tryAcquire()) {
+                limit.queued.increment();
+                if (!limit.bulkhead.tryAcquire(Math.max(0, endNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    limit.rejected.increment();
+                    String error = String.format(CONCURRENCY_WAIT_ERROR_FMT, maxWaitMillis, concurrency, key);
+                    logger.severe(error);
+                    throw new RESTException("%s", error);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.severe(WAIT_INTERRUPTED_ERROR + key);
+            throw new RESTException(WAIT_INTERRUPTED_ERROR + key, e);
+        } finally {
+            limit.waitedNanos.add(System.nanoTime() - startNanos);
+        }
+
+        int inFlight = limit.inFlight.incrementAndGet();
+        limit.peakInFlight.accumulateAndGet(inFlight, Math::max);
+        return new Permit(limit);
+    }
+
+    public List<RouteStats> getStats() {
+        List<RouteStats> stats = new ArrayList<>();
+        long now = System.nanoTime();
+        this.limits.values().forEach(limit -> stats.add(new RouteStats(limit, now)));
+        return stats;
+    }
+
+    // Forgets every route along with what the servers said about their limits
+    public void reset() {
+        this.limits.clear();
+        this.routes.clear();
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        // Structured header values may carry parameters, as in 100;w=60
+        String number = value.split("[;,]")[0].trim();
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            logger.fine("Ignoring malformed rate limit header value " + value);
+            return -1;
+        }
+    }
+
+    private static String getHeader(RESTResponse restResponse, String name) {
+        String value = restResponse.getHeader("RateLimit-" + name);
+        return value != null ? value : restResponse.getHeader("X-RateLimit-" + name);
+    }
+
+    // What the server said about its limit, which holds for every limit set on its route
+    private static class Route {
+        private final String key;
+        private final LongAdder limited = new LongAdder();
+        // The rate the server asked for and until when, 0 if it has not said
+        private volatile double serverRate;
+        private volatile long serverRateUntilNanos;
+        // The server asked for no requests until then
+        private volatile long pausedUntilNanos = System.nanoTime();
+
+        private Route(String key) {
+            this.key = key;
+        }
+
+        private synchronized void pause(long now, long pauseNanos) {
+            long untilNanos = now + pauseNanos;
+            if (pauseNanos > 0 && untilNanos - this.pausedUntilNanos > 0) {
+                logger.info(String.format("Pausing requests to %s for %d ms as asked by the server", this.key,
+                        TimeUnit.NANOSECONDS.toMillis(pauseNanos)));
+                this.pausedUntilNanos = untilNanos;
+            }
+        }
+
+        private synchronized void adapt(RESTResponse restResponse, long now) {
+            int status = restResponse.getStatus();
+            long remaining = parseLong(getHeader(restResponse, "Remaining"));
+            long reset = parseLong(getHeader(restResponse, "Reset"));
+            if (reset > EPOCH_RESET_THRESHOLD) {
+                reset = Math.max(0, reset - Instant.now().getEpochSecond());
+            }
+            if (status == 429) {
+                this.limited.increment();
+            }
+
+            // The server is turning requests away, so stop until it says to try again
+            int retryAfter = PollingPolicy.getRetryAfterSeconds(restResponse.getHeader("Retry-After"));
+            if ((status == 429 || status == 503) && retryAfter >= 0) {
+                pause(now, TimeUnit.SECONDS.toNanos(retryAfter));
+            } else if (status == 429 && reset < 0) {
+                pause(now, DEFAULT_PAUSE_NANOS);
+            }
+
+            // Spread what is left of the server's quota over the time until it resets, or stop until then if none is
+            // left. Without a reset time there is no telling how fast the quota comes back, so it is left alone.
+            if (remaining >= 0 && reset >= 0) {
+                if (remaining == 0 || status == 429) {
+                    pause(now, TimeUnit.SECONDS.toNanos(Math.max(1, reset)));
+                } else {
+                    this.serverRateUntilNanos = now + TimeUnit.SECONDS.toNanos(Math.max(1, reset));
+                    this.serverRate = (double) remaining / Math.max(1, reset);
+                }
+            }
+        }
+    }
+
+    // One rate and concurrency limit on a route, shared by every endpoint configured with it
+    private static class Limit {
+        private final Route route;
+        private final double configuredRate;
+        private final int maxConcurrency;
+        private final Semaphore bulkhead;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peakInFlight = new AtomicInteger();
+        private final LongAdder delayed = new LongAdder();
+        private final LongAdder queued = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder waitedNanos = new LongAdder();
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+
+        private Limit(Route route, double rate, int maxConcurrency) {
+            this.route = route;
+            this.configuredRate = rate;
+            this.maxConcurrency = maxConcurrency;
+            this.bulkhead = maxConcurrency > 0 ? new Semaphore(maxConcurrency, true) : null;
+            // Start with a full bucket so that the first requests are not held back
+            this.tokens = Math.max(1, rate);
+        }
+
+        // The rate in requests per second to keep to now, where 0 is no limit
+        private double getRate(long now) {
+            double serverRate = this.route.serverRate;
+            if (serverRate > 0 && now - this.route.serverRateUntilNanos < 0) {
+                return this.configuredRate > 0 ? Math.min(this.configuredRate, serverRate) : serverRate;
+            }
+            return this.configuredRate;
+        }
+
+        // Takes a token and returns 0 if one is free, otherwise returns how long until there will be one
+        private synchronized long tryTake(long now) {
+            // A pause empties the bucket, which then refills from the end of the pause
+            long pausedUntilNanos = this.route.pausedUntilNanos;
+            if (pausedUntilNanos - this.lastRefillNanos > 0) {
+                this.lastRefillNanos = pausedUntilNanos;
+                this.tokens = Math.min(this.tokens, 0);
+            }
+
+            double rate = getRate(now);
+            if (now - this.lastRefillNanos > 0) {
+                if (rate > 0) {
+                    double elapsedSeconds = (now - this.lastRefillNanos) / 1e9;
+                    this.tokens = Math.min(Math.max(1, rate), this.tokens + elapsedSeconds * rate);
+                }
+                this.lastRefillNanos = now;
+            }
+
+            // The bucket refills from the last refill, which is in the future while the route is paused
+            long readyNanos = Math.max(0, this.lastRefillNanos - now);
+            if (rate > 0 && this.tokens < 1) {
+                readyNanos += (long) Math.ceil((1 - this.tokens) / rate * 1e9);
+            }
+            if (readyNanos > 0) {
+                return readyNanos;
+            }
+            if (rate > 0) {
+                this.tokens -= 1;
+            }
+            return 0;
+        }
+    }
+
+    public static class Permit implements AutoCloseable {
+        private final Limit limit;
+        private boolean released = false;
+
+        private Permit(Limit limit) {
+            this.limit = limit;
+        }
+
+        // Follows what the response says about the rate limit of the server
+        public void adapt(RESTResponse restResponse) {
+            this.limit.route.adapt(restResponse, System.nanoTime());
+        }
+
+        @Override
+        public void close() {
+            if (this.released) {
+                return;
+            }
+            this.released = true;
+            this.limit.inFlight.decrementAndGet();
+            if (this.limit.bulkhead != null) {
+                this.limit.bulkhead.release();
+            }
+        }
+    }
+
+    public static class RouteStats {
+        private final String route;
+        private final double configuredRate;
+        private final double rate;
+        private final int maxConcurrency;
+        private final int inFlight;
+        private final int peakInFlight;
+        private final long delayed;
+        private final long queued;
+        private final long rejected;
+        private final long limited;
+        private final long waitedMillis;
+        private final long pausedMillis;
+
+        private RouteStats(Limit limit, long now) {
+            this.route = limit.route.key;
+            this.configuredRate = limit.configuredRate;
+            this.rate = limit.getRate(now);
+            this.maxConcurrency = limit.maxConcurrency;
+            synchronized (limit) {
+                this.pausedMillis = Math.max(0, TimeUnit.NANOSECONDS.toMillis(
+                        Math.max(limit.lastRefillNanos, limit.route.pausedUntilNanos) - now));
+            }
+            this.inFlight = limit.inFlight.get();
+            this.peakInFlight = limit.peakInFlight.get();
+            this.delayed = limit.delayed.sum();
+            this.queued = limit.queued.sum();
+            this.rejected = limit.rejected.sum();
+            this.limited = limit.route.limited.sum();
+            this.waitedMillis = TimeUnit.NANOSECONDS.toMillis(limit.waitedNanos.sum());
+        }
+
+        public String getRoute() {
+            return this.route;
+        }
+
+        public double getConfiguredRate() {
+            return this.configuredRate;
+        }
+
+        // The rate kept to now, which is lower than the configured one while the server asks for less
+        public double getRate() {
+            return this.rate;
+        }
+
+        public int getMaxConcurrency() {
+            return this.maxConcurrency;
+        }
+
+        public int getInFlight() {
+            return this.inFlight;
+        }
+
+        public int getPeakInFlight() {
+            return this.peakInFlight;
+        }
+
+        // Requests held back to keep within the rate
+        public long getDelayed() {
+            return this.delayed;
+        }
+
+        // Requests that waited for a free slot in the bulkhead
+        public long getQueued() {
+            return this.queued;
+        }
+
+        // Requests failed because their turn would not come within the time they may wait
+        public long getRejected() {
+            return this.rejected;
+        }
+
+        // Responses with status 429, which the limiter is there to avoid
+        public long getLimited() {
+            return this.limited;
+        }
+
+        public long getWaitedMillis() {
+            return this.waitedMillis;
+        }
+
+        public long getPausedMillis() {
+            return this.pausedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s rate=%.2f/%.2f inFlight=%d/%d peak=%d delayed=%d queued=%d rejected=%d limited=%d waited=%dms paused=%dms",
+                    this.route, this.rate, this.configuredRate, this.inFlight, this.maxConcurrency, this.peakInFlight,
+                    this.delayed, this.queued, this.rejected, this.limited, this.waitedMillis, this.pausedMillis);
+        }
+    }
+}
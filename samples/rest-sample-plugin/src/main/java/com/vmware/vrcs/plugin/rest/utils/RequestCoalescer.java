@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTResponse;
+
+public class RequestCoalescer {
+
+    private static final Logger logger = Logger.getLogger(RequestCoalescer.class.getName());
+
+    private static final String WAIT_TIMEOUT_ERROR_FMT = "Timed out after %d ms waiting for an identical request to %s";
+    private static final String WAIT_INTERRUPTED_ERROR = "Interrupted while waiting for an identical request to ";
+    private static final String WAIT_FAILED_ERROR = "Identical request failed: ";
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60000L;
+
+    public interface Exchange {
+        RESTResponse execute() throws RESTException;
+    }
+
+    // Requests in flight by key. The first caller for a key sends the request and every identical caller that arrives
+    // while it is in flight waits for the same response instead of sending its own. The entry is removed as soon as
+    // the response arrives, so nothing is cached: a caller arriving afterwards sends a new request.
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    // Sends the request, or waits at most timeoutMillis for the identical one already in flight. A flight older than
+    // the timeout is abandoned to whoever is still waiting on it and the next caller sends a fresh request, so one
+    // stuck exchange cannot hold up every later caller for the same resource.
+    public RESTResponse execute(String key, String description, long timeoutMillis, Exchange exchange)
+            throws RESTException {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Flight flight = new Flight();
+        while (true) {
+            Flight current = this.flights.putIfAbsent(key, flight);
+            if (current == null) {
+                return lead(key, flight, exchange);
+            }
+            long age = System.nanoTime() - current.startNanos;
+            if (age < timeoutNanos) {
+                return follow(current, description, timeoutNanos - age);
+            }
+            if (this.flights.replace(key, current, flight)) {
+                logger.info("Abandoning stalled request to " + description);
+                this.abandoned.increment();
+                return lead(key, flight, exchange);
+            }
+        }
+    }
+
+    // Stops callers from joining the request in flight for the key, so the next caller sends a new one. Callers
+    // already waiting still get its response.
+    public void cancel(String key) {
+        this.flights.remove(key);
+    }
+
+    public int getInFlight() {
+        return this.flights.size();
+    }
+
+    public long getSent() {
+        return this.sent.sum();
+    }
+
+    public long getShared() {
+        return this.shared.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("inFlight=%d sent=%d shared=%d timedOut=%d abandoned=%d", getInFlight(), getSent(),
+                getShared(), this.timedOut.sum(), this.abandoned.sum());
+    }
+
+    private RESTResponse lead(String key, Flight flight, Exchange exchange) throws RESTException {
+        this.sent.increment();
+        RESTResponse response = null;
+        Exception failure = null;
+        try {
+            response = exchange.execute();
+        } catch (RESTException | RuntimeException e) {
+            failure = e;
+        } finally {
+            // Stop others joining before handing out the result so that nobody joins a finished flight
+            this.flights.remove(key, flight);
+        }
+
+        if (failure != null) {
+            flight.future.completeExceptionally(failure);
+            if (failure instanceof RESTException) {
+                throw (RESTException) failure;
+            }
+            throw (RuntimeException) failure;
+        }
+        flight.future.complete(response);
+        return response;
+    }
+
+    private RESTResponse follow(Flight flight, String description, long timeoutNanos) throws RESTException {
+        this.shared.increment();
+        try {
+            return flight.future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            this.timedOut.increment();
+            String error = String.format(WAIT_TIMEOUT_ERROR_FMT, TimeUnit.NANOSECONDS.toMillis(timeoutNanos),
+                    description);
+            logger.severe(error);
+            throw new RESTException("%s", error);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.severe(WAIT_INTERRUPTED_ERROR + description);
+            throw new RESTException(WAIT_INTERRUPTED_ERROR + description, e);
+        } catch (ExecutionException e) {
+            // The identical request failed, which is the result this caller would have got too
+            if (e.getCause() instanceof RESTException) {
+                throw (RESTException) e.getCause();
+            }
+            logger.severe(WAIT_FAILED_ERROR + e.getCause());
+            throw new RESTException(WAIT_FAILED_ERROR + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static class Flight {
+        private final CompletableFuture<RESTResponse> future = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+    }
+}
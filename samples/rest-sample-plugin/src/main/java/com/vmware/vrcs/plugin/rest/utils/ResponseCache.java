@@ -0,0 +1,222 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+public class ResponseCache {
+
+    private static final Logger logger = Logger.getLogger(ResponseCache.class.getName());
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_MAX_CHARS = 8L * 1024 * 1024;
+    public static final long DEFAULT_TTL_MILLIS = 30000L;
+
+    private static final ResponseCache shared = new ResponseCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CHARS,
+            DEFAULT_TTL_MILLIS);
+
+    // Responses keyed by a hash of the request, least recently used first. Entries expire after a short time, or
+    // sooner if the server says so with Cache-Control, and the least recently used ones are evicted once there are
+    // too many of them or they take up too much memory between them.
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final int maxEntries;
+    private final long maxChars;
+    private final long ttlMillis;
+    private long chars;
+
+    public ResponseCache(int maxEntries, long maxChars, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.maxChars = maxChars;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public static ResponseCache getShared() {
+        return shared;
+    }
+
+    // The key for a request. Credentials are part of it so that callers with different access never share a
+    // response, and everything is hashed so that neither they nor large bodies are kept in memory.
+    public static String getKey(String endpointUrl, String username, String password, String truststore, String method,
+            String path, Map<String, String> headers, String body) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        // Header names are case-insensitive and their order does not matter
+        Map<String, String> sortedHeaders = new TreeMap<>();
+        headers.forEach((name, value) -> sortedHeaders.put(name.toLowerCase(), value));
+        update(digest, endpointUrl, username, password, truststore, method.toUpperCase(), path);
+        for (Map.Entry<String, String> header : sortedHeaders.entrySet()) {
+            update(digest, header.getKey(), header.getValue());
+        }
+        update(digest, body);
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    // The cached value, or null if there is none or it has expired
+    public String get(String key) {
+        synchronized (this.entries) {
+            Entry entry = this.entries.get(key);
+            if (entry != null && entry.expiresNanos - System.nanoTime() > 0) {
+                this.hits.increment();
+                return entry.value;
+            }
+            if (entry != null) {
+                remove(key);
+                this.expirations.increment();
+            }
+        }
+        this.misses.increment();
+        return null;
+    }
+
+    // Caches a value for a response with the given Cache-Control header, which may be null
+    public void put(String key, String value, String cacheControl) {
+        long ttl = getTtlMillis(cacheControl);
+        if (ttl <= 0 || value.length() > this.maxChars) {
+            return;
+        }
+
+        synchronized (this.entries) {
+            remove(key);
+            this.entries.put(key, new Entry(value, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl)));
+            this.chars += value.length();
+
+            // Evict expired entries first and then the least recently used until within both limits
+            long now = System.nanoTime();
+            Iterator<Map.Entry<String, Entry>> eldest = this.entries.entrySet().iterator();
+            while (eldest.hasNext() && (this.entries.size() > this.maxEntries || this.chars > this.maxChars)) {
+                Map.Entry<String, Entry> candidate = eldest.next();
+                if (candidate.getKey().equals(key)) {
+                    continue;
+                }
+                eldest.remove();
+                this.chars -= candidate.getValue().value.length();
+                if (candidate.getValue().expiresNanos - now > 0) {
+                    this.evictions.increment();
+                } else {
+                    this.expirations.increment();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+            this.chars = 0;
+        }
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    public int getSize() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        long chars;
+        synchronized (this.entries) {
+            chars = this.chars;
+        }
+        return String.format("size=%d/%d chars=%d/%d hits=%d misses=%d hitRate=%.2f expired=%d evicted=%d",
+                getSize(), this.maxEntries, chars, this.maxChars, getHits(), getMisses(), getHitRate(),
+                this.expirations.sum(), this.evictions.sum());
+    }
+
+    // How long a response may be cached for. The server can shorten the default with max-age, or forbid caching with
+    // no-store or no-cache, but cannot make a response live longer than the default.
+    private long getTtlMillis(String cacheControl) {
+        if (cacheControl == null) {
+            return this.ttlMillis;
+        }
+        long ttl = this.ttlMillis;
+        for (String directive : cacheControl.toLowerCase().split(",")) {
+            directive = directive.trim();
+            if (directive.equals("no-store") || directive.equals("no-cache")) {
+                return 0;
+            }
+            if (directive.startsWith("max-age=")) {
+                try {
+                    long maxAge = Long.parseLong(directive.substring("max-age=".length()).replace("\"", "").trim());
+                    ttl = Math.min(ttl, TimeUnit.SECONDS.toMillis(Math.max(maxAge, 0)));
+                } catch (NumberFormatException e) {
+                    logger.fine("Ignoring malformed Cache-Control directive " + directive);
+                }
+            }
+        }
+        return ttl;
+    }
+
+    private void remove(String key) {
+        Entry removed = this.entries.remove(key);
+        if (removed != null) {
+            this.chars -= removed.value.length();
+        }
+    }
+
+    private static void update(MessageDigest digest, String... values) {
+        for (String value : values) {
+            // Prefix each value with its length so that values cannot run into one another
+            String text = value == null ? "" : value;
+            digest.update((text.length() + ":").getBytes(StandardCharsets.UTF_8));
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static class Entry {
+        private final String value;
+        private final long expiresNanos;
+
+        private Entry(String value, long expiresNanos) {
+            this.value = value;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class ResponseExtractor implements RESTClient.BodyConsumer {
+
+    private static final Logger logger = Logger.getLogger(ResponseExtractor.class.getName());
+
+    private static final String MALFORMED_XPATH_ERROR = "XPath expression is malformed: ";
+    private static final String XML_ERROR = "Unable to read XML response: ";
+
+    // How far to look ahead for the first character that tells a JSON body from an XML one
+    private static final int SNIFF_LIMIT = 1024;
+
+    // Picks named values out of a response body. Expressions starting with $ are JSON paths and anything else is an
+    // XPath expression. A JSON body is only ever streamed through, so it never needs to be held in memory. XPath needs
+    // the document so an XML body is parsed, but it is parsed straight from the connection rather than from a copy.
+    private final Map<String, JsonPath> jsonPaths = new LinkedHashMap<>();
+    private final Map<String, XPathExpression> xpaths = new LinkedHashMap<>();
+    private final Map<String, Object> values = new LinkedHashMap<>();
+
+    public ResponseExtractor(Map<String, String> expressions) throws RESTException {
+        XPathFactory xpathFactory = null;
+        for (Map.Entry<String, String> expression : expressions.entrySet()) {
+            String name = expression.getKey();
+            String text = expression.getValue().trim();
+            this.values.put(name, null);
+            if (text.startsWith("$")) {
+                this.jsonPaths.put(name, JsonPath.parse(text));
+                continue;
+            }
+
+            if (xpathFactory == null) {
+                xpathFactory = XPathFactory.newInstance();
+            }
+            try {
+                this.xpaths.put(name, xpathFactory.newXPath().compile(text));
+            } catch (XPathExpressionException e) {
+                logger.severe(MALFORMED_XPATH_ERROR + e);
+                throw new RESTException(MALFORMED_XPATH_ERROR + text, e);
+            }
+        }
+    }
+
+    // The extracted values by name. A value is null if its expression selected nothing or did not apply to the body.
+    public Map<String, Object> getValues() {
+        return this.values;
+    }
+
+    @Override
+    public boolean consume(Reader reader) throws IOException, RESTException {
+        BufferedReader body = new BufferedReader(reader);
+        if (isXml(body)) {
+            if (!this.xpaths.isEmpty()) {
+                extractXml(body);
+            }
+            return false;
+        }
+        if (this.jsonPaths.isEmpty()) {
+            return false;
+        }
+
+        List<String> names = new ArrayList<>(this.jsonPaths.keySet());
+        JsonPathReader jsonReader = new JsonPathReader(new ArrayList<>(this.jsonPaths.values()));
+        boolean isRead = jsonReader.read(body);
+        for (int i = 0; i < names.size(); i++) {
+            if (jsonReader.isFound(i)) {
+                this.values.put(names.get(i), jsonReader.getValue(i));
+            }
+        }
+        return isRead;
+    }
+
+    private static boolean isXml(BufferedReader body) throws IOException {
+        // Peek at the first character that is not whitespace or a byte order mark, then rewind
+        body.mark(SNIFF_LIMIT);
+        try {
+            for (int i = 0; i < SNIFF_LIMIT; i++) {
+                int c = body.read();
+                if (c == -1) {
+                    return false;
+                }
+                if (c != '\uFEFF' && !Character.isWhitespace(c)) {
+                    return c == '<';
+                }
+            }
+            return false;
+        } finally {
+            body.reset();
+        }
+    }
+
+    private void extractXml(Reader body) throws RESTException {
+        Document document;
+        try {
+            // Responses come from outside so never resolve a DTD or external entities
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setExpandEntityReferences(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            // Report parse errors through the exception only rather than also printing them
+            builder.setErrorHandler(new DefaultHandler());
+            document = builder.parse(new InputSource(body));
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            logger.severe(XML_ERROR + e);
+            throw new RESTException(XML_ERROR + e.getMessage(), e);
+        }
+
+        for (Map.Entry<String, XPathExpression> xpath : this.xpaths.entrySet()) {
+            this.values.put(xpath.getKey(), evaluate(xpath.getValue(), document));
+        }
+    }
+
+    private static Object evaluate(XPathExpression xpath, Document document) throws RESTException {
+        NodeList nodes;
+        try {
+            nodes = (NodeList) xpath.evaluate(document, XPathConstants.NODESET);
+        } catch (XPathExpressionException e) {
+            // Functions such as count() or string() do not select nodes, so take their result as text
+            try {
+                return xpath.evaluate(document, XPathConstants.STRING);
+            } catch (XPathExpressionException ex) {
+                logger.severe(XML_ERROR + ex);
+                throw new RESTException(XML_ERROR + ex.getMessage(), ex);
+            }
+        }
+
+        // The text of a single node, or a list with the text of each node if there are several
+        if (nodes.getLength() == 0) {
+            return null;
+        }
+        if (nodes.getLength() == 1) {
+            return nodes.item(0).getTextContent();
+        }
+        List<Object> texts = new ArrayList<>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            texts.add(nodes.item(i).getTextContent());
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLHandshakeException;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTResponse;
+
+public class RetryPolicy {
+
+    private static final Logger logger = Logger.getLogger(RetryPolicy.class.getName());
+
+    private static final String RETRY_INTERRUPTED_ERROR = "Interrupted while waiting to retry request to ";
+
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 200L;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 10000L;
+
+    public interface Attempt {
+        RESTResponse execute() throws RESTException;
+    }
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final boolean isRetryNonIdempotent;
+
+    public RetryPolicy(int maxRetries) {
+        this(maxRetries, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, false);
+    }
+
+    // Retries a request at most maxRetries times. Only requests that can safely be sent twice are retried unless
+    // isRetryNonIdempotent is set, because a POST that timed out may still have been carried out by the server.
+    public RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis, boolean isRetryNonIdempotent) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelayMillis = Math.max(1, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+        this.isRetryNonIdempotent = isRetryNonIdempotent;
+    }
+
+    public int getMaxRetries() {
+        return this.maxRetries;
+    }
+
+    public boolean isRetryable(RESTClient.Method method) {
+        return this.maxRetries > 0 && (this.isRetryNonIdempotent || method.isIdempotent());
+    }
+
+    // Statuses that say the server or a gateway in front of it is briefly unable to answer, as opposed to the request
+    // being wrong, so the same request may well succeed a moment later
+    public static boolean isRetryableStatus(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    // Failures of the connection itself, such as a refused connection, a reset or a timeout, are worth retrying. An
+    // unknown host or a certificate that is not trusted will not fix itself, and failures without an I/O cause, such as
+    // an oversize body, a deadline or an open circuit breaker, would only fail again.
+    public static boolean isRetryableFailure(RESTException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof IOException && !(cause instanceof UnknownHostException)
+                && !(cause instanceof SSLHandshakeException);
+    }
+
+    // The delay before the given retry, counting from 0, as exponential backoff with full jitter so that clients that
+    // failed together do not all come back at the same moment. A Retry-After header from the server sets the least
+    // delay, and -1 is returned if it asks for longer than the maximum delay as that is not worth waiting for.
+    public long getDelayMillis(int retry, String retryAfter) {
+        long backoff = this.baseDelayMillis << Math.min(retry, 30);
+        long delay = ThreadLocalRandom.current().nextLong(Math.min(backoff, this.maxDelayMillis) + 1);
+        int retryAfterSeconds = PollingPolicy.getRetryAfterSeconds(retryAfter);
+        if (retryAfterSeconds >= 0) {
+            long retryAfterMillis = TimeUnit.SECONDS.toMillis(retryAfterSeconds);
+            if (retryAfterMillis > this.maxDelayMillis) {
+                return -1;
+            }
+            delay = Math.max(delay, retryAfterMillis);
+        }
+        return delay;
+    }
+
+    // Runs the attempt until it gets a response that is not worth retrying or the retries run out, and then returns
+    // the last response or throws the last failure. Waiting to retry never runs past the deadline of the request.
+    public RESTResponse execute(URL url, RESTClient.RESTRequest restRequest, Attempt attempt) throws RESTException {
+        if (!isRetryable(restRequest.getMethod())) {
+            return attempt.execute();
+        }
+
+        String description = restRequest.getMethod() + " " + url;
+        for (int retry = 0; ; retry++) {
+            RESTResponse restResponse = null;
+            RESTException failure = null;
+            String reason;
+            try {
+                restResponse = attempt.execute();
+                if (retry >= this.maxRetries || !isRetryableStatus(restResponse.getStatus())) {
+                    return restResponse;
+                }
+                reason = "status " + restResponse.getStatus();
+            } catch (RESTException e) {
+                if (retry >= this.maxRetries || !isRetryableFailure(e)) {
+                    throw e;
+                }
+                failure = e;
+                reason = e.getCause().toString();
+            }
+
+            long delayMillis = getDelayMillis(retry, restResponse != null ? restResponse.getHeader("Retry-After") : null);
+            if (delayMillis < 0 || restRequest.isPastDeadline()
+                    || (restRequest.hasDeadline() && restRequest.getTimeoutMillis(0) <= delayMillis)) {
+                logger.info("Not retrying request to " + description + " as the retry would come too late");
+                if (failure != null) {
+                    throw failure;
+                }
+                return restResponse;
+            }
+
+            logger.info(String.format("Retrying request to %s in %d ms after %s (retry %d of %d)", description,
+                    delayMillis, reason, retry + 1, this.maxRetries));
+            RESTClient.getCircuitBreaker().recordRetry(url);
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.severe(RETRY_INTERRUPTED_ERROR + description);
+                throw new RESTException(RETRY_INTERRUPTED_ERROR + description, e);
+            }
+        }
+    }
+}
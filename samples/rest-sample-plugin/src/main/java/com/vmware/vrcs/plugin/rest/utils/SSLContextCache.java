@@ -0,0 +1,211 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class SSLContextCache {
+
+    private static final Logger logger = Logger.getLogger(SSLContextCache.class.getName());
+
+    private static final String DISABLE_SSL_ERROR = "Failed to dissable SSL certificate verification with error: ";
+    private static final String TRUSTSTORE_ERROR = "Failed to load the endpoint truststore with error: ";
+    private static final String EMPTY_TRUSTSTORE_ERROR = "Endpoint truststore does not contain any certificates.";
+
+    private static final String TRUST_ALL_KEY = "trust-all";
+    private static final String TLS_PROTOCOL = "TLS";
+
+    // Resumable TLS sessions are what make a reused socket factory worthwhile, so keep plenty of them around for a
+    // reasonably long time. Tiles poll the same handful of endpoints over and over again.
+    private static final int SESSION_CACHE_SIZE = 512;
+    private static final int SESSION_TIMEOUT_SECONDS = 3600;
+
+    private static final HostnameVerifier TRUST_ALL_HOSTNAME_VERIFIER = (hostname, session) -> true;
+
+    // One socket factory per trust policy: either trust all certificates or trust the certificates of an endpoint
+    // truststore, keyed by its PEM contents
+    private static final ConcurrentMap<String, SSLSocketFactory> socketFactories = new ConcurrentHashMap<>();
+
+    // When the current thread last started a TLS handshake, for timing it apart from opening the connection
+    private static final ThreadLocal<long[]> handshakeStartNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    private SSLContextCache() {
+    }
+
+    public static void configure(HttpsURLConnection connection, String truststore) throws RESTException {
+        if (truststore == null || truststore.trim().isEmpty()) {
+            // Trust all certificates and accept all hosts
+            connection.setSSLSocketFactory(getSocketFactory(TRUST_ALL_KEY, null));
+            connection.setHostnameVerifier(TRUST_ALL_HOSTNAME_VERIFIER);
+        } else {
+            // Verify the server certificate against the truststore and keep the default hostname verification
+            connection.setSSLSocketFactory(getSocketFactory(truststore.trim(), truststore));
+        }
+    }
+
+    // Forgets the handshake start of the current thread, before it opens a connection
+    static void clearHandshakeStart() {
+        handshakeStartNanos.get()[0] = 0;
+    }
+
+    // When the current thread started a TLS handshake since it was cleared, or 0 if it did not, as when it reused a
+    // connection from the keep-alive cache
+    static long getHandshakeStart() {
+        return handshakeStartNanos.get()[0];
+    }
+
+    private static SSLSocketFactory getSocketFactory(String key, String truststore) throws RESTException {
+        SSLSocketFactory socketFactory = socketFactories.get(key);
+        if (socketFactory == null) {
+            // Building a context is expensive so only do it once per trust policy. Losing a race here simply builds
+            // one more context that is thrown away.
+            socketFactory = truststore == null ? createTrustAllSocketFactory() : createTruststoreSocketFactory(truststore);
+            SSLSocketFactory existing = socketFactories.putIfAbsent(key, socketFactory);
+            if (existing != null) {
+                socketFactory = existing;
+            }
+        }
+        return socketFactory;
+    }
+
+    private static SSLSocketFactory createTrustAllSocketFactory() throws RESTException {
+        try {
+            // Set trust manager that trusts all certificates
+            TrustManager[] trustAllCerts = new TrustManager[] {
+                    new X509TrustManager() {
+                        public X509Certificate[] getAcceptedIssuers() {
+                            return new X509Certificate[0];
+                        }
+
+                        public void checkClientTrusted(X509Certificate[] certs, String authType) {
+                        }
+
+                        public void checkServerTrusted(X509Certificate[] certs, String authType) {
+                        }
+                    }
+            };
+            logger.info("Creating SSL context that trusts all certificates");
+            return createSocketFactory(trustAllCerts);
+        } catch (GeneralSecurityException e) {
+            logger.severe(DISABLE_SSL_ERROR + e);
+            throw new RESTException(DISABLE_SSL_ERROR + e.getMessage(), e);
+        }
+    }
+
+    private static SSLSocketFactory createTruststoreSocketFactory(String truststore) throws RESTException {
+        try {
+            // Load the PEM encoded certificates into an in-memory keystore
+            CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+            Collection<? extends Certificate> certificates = certificateFactory.generateCertificates(
+                    new ByteArrayInputStream(truststore.trim().getBytes(StandardCharsets.US_ASCII)));
+            if (certificates.isEmpty()) {
+                logger.severe(EMPTY_TRUSTSTORE_ERROR);
+                throw new RESTException(EMPTY_TRUSTSTORE_ERROR);
+            }
+
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(null, null);
+            int index = 0;
+            for (Certificate certificate : certificates) {
+                keyStore.setCertificateEntry("endpoint-" + index++, certificate);
+            }
+
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(keyStore);
+            logger.info(String.format("Creating SSL context that trusts %d endpoint certificates", certificates.size()));
+            return createSocketFactory(trustManagerFactory.getTrustManagers());
+        } catch (GeneralSecurityException | IOException e) {
+            logger.severe(TRUSTSTORE_ERROR + e);
+            throw new RESTException(TRUSTSTORE_ERROR + e.getMessage(), e);
+        }
+    }
+
+    private static SSLSocketFactory createSocketFactory(TrustManager[] trustManagers) throws GeneralSecurityException {
+        SSLContext sslContext = SSLContext.getInstance(TLS_PROTOCOL);
+        sslContext.init(null, trustManagers, null);
+
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+        sessionContext.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        return new TimedSocketFactory(sslContext.getSocketFactory());
+    }
+
+    // Notes when the handshake starts so that it can be timed. Unconnected sockets are deliberately not supported,
+    // which makes HttpsURLConnection open a plain socket first and then layer TLS over it once it is connected.
+    private static class TimedSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+
+        private TimedSocketFactory(SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            handshakeStartNanos.get()[0] = System.nanoTime();
+            return this.delegate.createSocket(socket, host, port, autoClose);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return this.delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return this.delegate.createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return this.delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException {
+            return this.delegate.createSocket(address, port, localAddress, localPort);
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return this.delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return this.delegate.getSupportedCipherSuites();
+        }
+    }
+}
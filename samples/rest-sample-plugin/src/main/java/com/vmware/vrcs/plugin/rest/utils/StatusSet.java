@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class StatusSet {
+
+    private static final Logger logger = Logger.getLogger(StatusSet.class.getName());
+
+    private static final String MALFORMED_STATUSES_ERROR = "Expected status codes are malformed: ";
+
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+    private static final int WORDS = (MAX_STATUS - MIN_STATUS) / Long.SIZE + 1;
+
+    // One bit per status code from 100 to 599
+    private final long[] words;
+
+    private StatusSet(long[] words) {
+        this.words = words;
+    }
+
+    // Parses a comma separated list of status codes (200), ranges (200-204) and classes (2xx or 20x). An empty list
+    // is an empty set.
+    public static StatusSet parse(String statuses) throws RESTException {
+        long[] words = new long[WORDS];
+        for (String token : statuses.split(",")) {
+            String entry = token.trim().toLowerCase();
+            if (entry.isEmpty()) {
+                continue;
+            }
+
+            int from;
+            int to;
+            int dash = entry.indexOf('-');
+            if (dash > 0) {
+                from = parseStatus(entry.substring(0, dash).trim(), statuses);
+                to = parseStatus(entry.substring(dash + 1).trim(), statuses);
+            } else if (entry.indexOf('x') >= 0) {
+                // Only trailing digits can be wildcards. Replace them with 0 and 9 to get the bounds of the class.
+                if (!entry.matches("\\d(\\d|x)x")) {
+                    throw malformed(statuses);
+                }
+                from = parseStatus(entry.replace('x', '0'), statuses);
+                to = parseStatus(entry.replace('x', '9'), statuses);
+            } else {
+                from = parseStatus(entry, statuses);
+                to = from;
+            }
+            if (from > to) {
+                throw malformed(statuses);
+            }
+
+            for (int status = from; status <= to; status++) {
+                int bit = status - MIN_STATUS;
+                words[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+            }
+        }
+        return new StatusSet(words);
+    }
+
+    // Restores a set saved with toWords, e.g. from the hidden output state of a polling tile
+    public static StatusSet fromWords(List<Long> savedWords) {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < savedWords.size() && i / 2 < words.length; i++) {
+            long half = savedWords.get(i) & 0xFFFFFFFFL;
+            words[i / 2] |= i % 2 == 0 ? half : half << 32;
+        }
+        return new StatusSet(words);
+    }
+
+    // The bits as unsigned 32 bit halves, which survive being stored as JSON numbers without losing precision
+    public List<Long> toWords() {
+        List<Long> savedWords = new ArrayList<>(this.words.length * 2);
+        for (long word : this.words) {
+            savedWords.add(word & 0xFFFFFFFFL);
+            savedWords.add(word >>> 32);
+        }
+        return savedWords;
+    }
+
+    public boolean contains(int status) {
+        if (status < MIN_STATUS || status > MAX_STATUS) {
+            return false;
+        }
+        int bit = status - MIN_STATUS;
+        return (this.words[bit / Long.SIZE] & (1L << (bit % Long.SIZE))) != 0;
+    }
+
+    public boolean isEmpty() {
+        for (long word : this.words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseStatus(String status, String statuses) throws RESTException {
+        if (status.length() != 3) {
+            throw malformed(statuses);
+        }
+        int code;
+        try {
+            code = Integer.parseInt(status);
+        } catch (NumberFormatException e) {
+            throw malformed(statuses);
+        }
+        if (code < MIN_STATUS || code > MAX_STATUS) {
+            throw malformed(statuses);
+        }
+        return code;
+    }
+
+    private static RESTException malformed(String statuses) {
+        logger.severe(MALFORMED_STATUSES_ERROR + statuses);
+        return new RESTException(MALFORMED_STATUSES_ERROR + statuses);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.StrictAssertions.assertThat;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.fms.tile.common.TileExecutableResponse;
+import com.vmware.fms.tile.common.TileProperties;
+import com.vmware.fms.tile.common.TileUtils;
+import com.vmware.fms.tile.test.TileVerificationExecutor;
+
+public class BatchTileTest extends TestCase {
+    private static final int TILE_EXECUTION_TIMEOUT_SEC = 100;
+    private static final String BATCH_FAIL = "Batch request failed because 1 of 3 requests did not succeed";
+    private static final String BATCH_FAIL_FAST = "Batch request stopped after request 0 failed";
+    private static final String BATCH_TIMEOUT_FAIL = "Batch request timed out after 1 sec";
+    private static final String RESULTS_EXCEEDED_FAIL = "Batch results exceed 4MB, the headers and body of 1 of 3 requests were left out";
+
+    private BatchTile tile;
+    WireMockServer server = new WireMockServer();
+
+    @Before
+    public void setUp() throws Exception {
+        this.tile = new BatchTile();
+        this.server = new WireMockServer(wireMockConfig().port(9090));
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.stop();
+    }
+
+    @Test
+    public void testBatchExecution() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/batch/" + i))
+                    .willReturn(WireMock.aResponse()
+                            .withStatus(200)
+                            .withFixedDelay((3 - i) * 100)
+                            .withBody("item " + i)));
+        }
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        TileProperties batchProperties = getBatchTileProperty(tileExecutor, "/batch/0", "/batch/1", "/batch/2");
+        tileExecutor.setInputProperties(batchProperties);
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertEquals(3, (int) tileResponse.getOutputProperties().getAsInteger("succeeded"));
+        assertEquals(0, (int) tileResponse.getOutputProperties().getAsInteger("failed"));
+
+        // Results are reported in the order of the requests even though the last one finished first
+        List<Map<String, Object>> results = tileResponse.getOutputProperties().getAsJsonArray("results");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("item " + i, results.get(i).get("body"));
+            assertEquals(200, ((Number) results.get(i).get("status")).intValue());
+        }
+
+        // Or in the order they completed
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        batchProperties = getBatchTileProperty(tileExecutor, "/batch/0", "/batch/1", "/batch/2");
+        batchProperties.setBoolean("ordered", false);
+        tileExecutor.setInputProperties(batchProperties);
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        results = tileExecutor.getResponse().getOutputProperties().getAsJsonArray("results");
+        assertEquals("item 2", results.get(0).get("body"));
+    }
+
+    @Test
+    public void testBatchCollectsAllFailures() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/batch/ok"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/batch/missing"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(404)));
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        tileExecutor.setInputProperties(getBatchTileProperty(tileExecutor, "/batch/missing", "/batch/ok", "/batch/ok"));
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(BATCH_FAIL);
+        assertEquals(2, (int) tileResponse.getOutputProperties().getAsInteger("succeeded"));
+        assertEquals(1, (int) tileResponse.getOutputProperties().getAsInteger("failed"));
+    }
+
+    @Test
+    public void testBatchFailFast() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/batch/missing"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(404)));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/batch/ok"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)));
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        TileProperties batchProperties = getBatchTileProperty(tileExecutor, "/batch/missing", "/batch/ok", "/batch/ok");
+        batchProperties.setInteger("concurrency", 1);
+        batchProperties.setBoolean("failFast", true);
+        tileExecutor.setInputProperties(batchProperties);
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(BATCH_FAIL_FAST);
+        assertEquals(0, (int) tileResponse.getOutputProperties().getAsInteger("succeeded"));
+        assertEquals(2, (int) tileResponse.getOutputProperties().getAsInteger("skipped"));
+    }
+
+    @Test
+    public void testBatchTimeout() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/batch/slow"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(3000)));
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        TileProperties batchProperties = getBatchTileProperty(tileExecutor, "/batch/slow", "/batch/slow");
+        batchProperties.setInteger("timeout", 1);
+        tileExecutor.setInputProperties(batchProperties);
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(BATCH_TIMEOUT_FAIL);
+        assertEquals(2, (int) tileResponse.getOutputProperties().getAsInteger("skipped"));
+    }
+
+    @Test
+    public void testBatchConcurrencyIsCapped() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/batch/ok"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)));
+
+        // More requests than the shared asynchronous threads and their queue can hold at once. The batch sends them a
+        // few at a time however many it is asked to run together, so none of them is turned away.
+        String[] paths = new String[1100];
+        Arrays.fill(paths, "/batch/ok");
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        TileProperties batchProperties = getBatchTileProperty(tileExecutor, paths);
+        batchProperties.setInteger("concurrency", 2000);
+        tileExecutor.setInputProperties(batchProperties);
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertEquals(paths.length, (int) tileResponse.getOutputProperties().getAsInteger("succeeded"));
+    }
+
+    @Test
+    public void testOversizedResults() throws Exception {
+        // Each body is well within the limit for a single response, but the three together are not
+        char[] body = new char[3 * 512 * 1024];
+        Arrays.fill(body, 'a');
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/batch/large"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody(new String(body))));
+
+        for (String onOversize : new String[] { "fail", "truncate" }) {
+            TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+            TileProperties batchProperties = getBatchTileProperty(tileExecutor, "/batch/large", "/batch/large",
+                    "/batch/large");
+            batchProperties.setString("onOversize", onOversize);
+            tileExecutor.setInputProperties(batchProperties);
+            tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+            TileExecutableResponse tileResponse = tileExecutor.getResponse();
+            if (onOversize.equals("fail")) {
+                assertTrue(tileResponse.isFailed());
+                assertThat(tileResponse.getFailureMessage()).contains(RESULTS_EXCEEDED_FAIL);
+            } else {
+                assertFalse(tileResponse.isFailed());
+            }
+            assertEquals(3, (int) tileResponse.getOutputProperties().getAsInteger("succeeded"));
+            assertTrue(tileResponse.getOutputProperties().getAsBoolean("resultsTruncated"));
+
+            // The result that did not fit is still reported, only without its headers and body
+            List<Map<String, Object>> results = tileResponse.getOutputProperties().getAsJsonArray("results");
+            assertEquals(3, results.size());
+            assertEquals(body.length, ((String) results.get(1).get("body")).length());
+            assertFalse(results.get(2).containsKey("body"));
+            assertFalse(results.get(2).containsKey("headers"));
+            assertEquals(true, results.get(2).get("truncated"));
+            assertEquals(200, ((Number) results.get(2).get("status")).intValue());
+        }
+    }
+
+    private static TileProperties getBatchTileProperty(TileVerificationExecutor tileExecutor, String... paths) {
+        TileUtils tileUtils = tileExecutor.getRequest().getTileUtils();
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+
+        List<TileProperties> requests = new LinkedList<TileProperties>();
+        for (String path : paths) {
+            TileProperties item = tileUtils.newTileProperties();
+            item.setString("path", path);
+            item.setString("method", "GET");
+            item.setString("body", "");
+            item.setPropertiesArray("headers", new LinkedList<TileProperties>());
+            requests.add(item);
+        }
+
+        TileProperties tileProperties = tileUtils.newTileProperties();
+        tileProperties.setProperties("endpoint", requestProperty.getEndpointTileProperty());
+        tileProperties.setPropertiesArray("requests", requests);
+        tileProperties.setInteger("concurrency", 8);
+        tileProperties.setBoolean("failFast", false);
+        tileProperties.setBoolean("ordered", true);
+        tileProperties.setInteger("timeout", 0);
+        return tileProperties;
+    }
+}
@@ -11,7 +11,14 @@
 
 package com.vmware.vrcs.plugin.rest;
 
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
 import junit.framework.TestCase;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -24,13 +31,85 @@ public class EndpointTileTest extends TestCase {
     private static final String MALFORMED_ERROR = "URL is malformed.";
     private static final String AUTH_MALFORMED_ERROR = "REST Endpoint username or password is empty.";
     private static final String IO_ERROR = "Unable to read from/write to connection: ";
+    private static final String TRUSTSTORE_ERROR = "Failed to load the endpoint truststore with error: ";
+    private static final String UNAUTHORIZED_ERROR = "REST Endpoint credentials are invalid.";
 
-    private EndpointTile tile;
+    private static final String ENDPOINT_URL = "http://localhost:9090";
 
+    private EndpointTile tile;
+    private WireMockServer server;
 
     @Before
     public void setUp() throws Exception {
         this.tile = new EndpointTile();
+        this.server = new WireMockServer(wireMockConfig().port(9090));
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.stop();
+    }
+
+    @Test
+    public void testValidateWithHead() throws Exception {
+        // Successful validations are remembered, so each test validates an endpoint of its own
+        this.server.stubFor(WireMock.request("HEAD", WireMock.urlEqualTo("/validate/head"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)));
+        TileExecutableResponse tileResponse = validate(ENDPOINT_URL + "/validate/head", "", "");
+        assertFalse(tileResponse.isFailed());
+        this.server.verify(1, headRequestedFor("/validate/head"));
+        this.server.verify(0, WireMock.getRequestedFor(WireMock.urlEqualTo("/validate/head")));
+    }
+
+    @Test
+    public void testValidateFallsBackToGet() throws Exception {
+        this.server.stubFor(WireMock.request("HEAD", WireMock.urlEqualTo("/validate/get"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(405)));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/validate/get"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody("<response>Success</response>")));
+        TileExecutableResponse tileResponse = validate(ENDPOINT_URL + "/validate/get", "", "");
+        assertFalse(tileResponse.isFailed());
+        this.server.verify(1, headRequestedFor("/validate/get"));
+        this.server.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo("/validate/get")));
+    }
+
+    @Test
+    public void testValidationIsCached() throws Exception {
+        this.server.stubFor(WireMock.request("HEAD", WireMock.urlEqualTo("/validate/cached"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)));
+        assertFalse(validate(ENDPOINT_URL + "/validate/cached", "user", "secret").isFailed());
+        assertFalse(validate(ENDPOINT_URL + "/validate/cached", "user", "secret").isFailed());
+        this.server.verify(1, headRequestedFor("/validate/cached"));
+
+        // Other credentials for the same URL are validated on their own
+        assertFalse(validate(ENDPOINT_URL + "/validate/cached", "other", "secret").isFailed());
+        this.server.verify(2, headRequestedFor("/validate/cached"));
+    }
+
+    @Test
+    public void testUnauthorizedIsNotCached() throws Exception {
+        this.server.stubFor(WireMock.request("HEAD", WireMock.urlEqualTo("/validate/unauthorized"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(401)));
+        for (int i = 0; i < 2; i++) {
+            TileExecutableResponse tileResponse = validate(ENDPOINT_URL + "/validate/unauthorized", "user", "wrong");
+            assertTrue(tileResponse.isFailed());
+            assertTrue(tileResponse.getFailureMessage().contains(UNAUTHORIZED_ERROR));
+        }
+        this.server.verify(2, headRequestedFor("/validate/unauthorized"));
+
+        // Once the server accepts the credentials the endpoint validates
+        this.server.stubFor(WireMock.request("HEAD", WireMock.urlEqualTo("/validate/unauthorized"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)));
+        assertFalse(validate(ENDPOINT_URL + "/validate/unauthorized", "user", "wrong").isFailed());
+        this.server.verify(3, headRequestedFor("/validate/unauthorized"));
     }
 
     @Test
@@ -71,6 +150,19 @@ public class EndpointTileTest extends TestCase {
         assertTrue(tileResponse.getFailureMessage().contains(MALFORMED_ERROR));
     }
 
+    @Test
+    public void testInvalidTruststoreFail() throws Exception {
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setEndpoint("https://www.aabbccxyzxusdfw.com", "", "");
+        requestProperty.setEndpointTruststore("-----BEGIN CERTIFICATE-----\nnot a certificate\n-----END CERTIFICATE-----");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertTrue(tileResponse.getFailureMessage().contains(TRUSTSTORE_ERROR));
+    }
+
     @Test
     public void testLocalHostFail() throws Exception {
         TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
@@ -94,4 +186,18 @@ public class EndpointTileTest extends TestCase {
         tileResponse = tileExecutor.getResponse();
         assertEquals(LOCALHOST_ERROR, tileResponse.getFailureMessage());
     }
+
+    private TileExecutableResponse validate(String url, String username, String password) throws Exception {
+        // Localhost is not accepted as an endpoint, except by a tile made to validate against the mock server
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(new EndpointTile(true));
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setEndpoint(url, username, password);
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        return tileExecutor.getResponse();
+    }
+
+    private static RequestPatternBuilder headRequestedFor(String path) {
+        return new RequestPatternBuilder(RequestMethod.HEAD, WireMock.urlEqualTo(path));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.fms.tile.test.TileVerificationExecutor;
+import com.vmware.vrcs.plugin.rest.utils.Histogram;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient;
+
+// Many pipelines running the task at once against a server that is slow and sometimes fails, reporting throughput,
+// latency percentiles, threads and heap so that executor nodes can be sized. These take minutes, so they only run with
+// mvn test -P load-test, and the load is set with -Dload.concurrency, -Dload.executions, -Dload.pollingExecutions,
+// -Dload.latencyMillis and -Dload.faultRate.
+public class LoadTest extends TestCase {
+    private static final int TILE_EXECUTION_TIMEOUT_SEC = 100;
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 50);
+    private static final int EXECUTIONS = Integer.getInteger("load.executions", 2000);
+    private static final int POLLING_EXECUTIONS = Integer.getInteger("load.pollingExecutions", 200);
+    private static final int LATENCY_MILLIS = Integer.getInteger("load.latencyMillis", 20);
+    private static final double FAULT_RATE = Double.parseDouble(System.getProperty("load.faultRate", "0.02"));
+
+    // Polling runs see the task in progress this many times before it is done
+    private static final int POLLS_UNTIL_DONE = 3;
+
+    // Held here as the level would be lost if the logger were garbage collected
+    private static final Logger pluginLogger = Logger.getLogger("com.vmware.vrcs.plugin.rest");
+
+    static {
+        // The stub server sends the headers and the body separately, so without nodelay each response would wait out a
+        // delayed acknowledgement and that is all the results would show
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private TaskTile tile;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String endpointUrl;
+    private final LongAdder faults = new LongAdder();
+    private final ConcurrentMap<String, AtomicInteger> polls = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        // One tile serves every pipeline, as on an appliance
+        this.tile = new TaskTile();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/task", exchange -> respond(exchange, "DONE"));
+        this.server.createContext("/poll/", exchange -> {
+            int count = this.polls.computeIfAbsent(exchange.getRequestURI().getPath(), path -> new AtomicInteger())
+                    .incrementAndGet();
+            respond(exchange, count < POLLS_UNTIL_DONE ? "RUNNING" : "DONE");
+        });
+        this.serverExecutor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.serverExecutor);
+        this.server.start();
+        this.endpointUrl = "http://localhost:" + this.server.getAddress().getPort();
+
+        // Only warnings and failures, the plug-in logs every request otherwise
+        pluginLogger.setLevel(Level.WARNING);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pluginLogger.setLevel(null);
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+        RESTClient.getCircuitBreaker().reset();
+    }
+
+    @Test
+    public void testSynchronousLoad() throws Exception {
+        int failed = runLoad("synchronous", EXECUTIONS, execution -> {
+            TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+            RequestProperty requestProperty = new RequestProperty(tileExecutor);
+            requestProperty.setEndpoint(this.endpointUrl, "", "");
+            requestProperty.setPath("/task");
+            requestProperty.setExpectedStatus("200");
+            requestProperty.setExpectedResponse("DONE");
+            tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+            tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+            return tileExecutor;
+        });
+
+        // Faults are retried, so a run only fails if every one of its attempts does
+        assertTrue(failed <= Math.max(1, EXECUTIONS * FAULT_RATE * FAULT_RATE));
+    }
+
+    @Test
+    public void testPollingLoad() throws Exception {
+        int failed = runLoad("polling", POLLING_EXECUTIONS, execution -> {
+            TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+            RequestProperty requestProperty = new RequestProperty(tileExecutor);
+            requestProperty.setEndpoint(this.endpointUrl, "", "");
+            requestProperty.setPath("/poll/" + execution);
+            requestProperty.setAsynchronous(true);
+            requestProperty.setPollInterval(1);
+            requestProperty.setTimeout(30);
+            requestProperty.setExpectedStatus("200");
+            requestProperty.setExpectedResponse("DONE");
+            tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+            tileExecutor.executeAndWaitForCompletion(TILE_EXECUTION_TIMEOUT_SEC);
+            return tileExecutor;
+        });
+
+        // An error status is simply polled again at the next interval, only a poll that cannot reach the server at all
+        // fails the run
+        assertTrue(failed <= Math.max(1, POLLING_EXECUTIONS * POLLS_UNTIL_DONE * FAULT_RATE * FAULT_RATE));
+    }
+
+    private interface Execution {
+        TileVerificationExecutor run(int execution) throws Exception;
+    }
+
+    // Runs the executions on CONCURRENCY threads, prints a report and returns how many failed
+    private int runLoad(String name, int executions, Execution execution) throws Exception {
+        RESTClient.getMetrics().reset();
+        this.faults.reset();
+        Histogram latency = new Histogram(1e6);
+        AtomicInteger failed = new AtomicInteger();
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        threads.resetPeakThreadCount();
+        long[] gcBefore = getGarbageCollection();
+        AtomicLong peakHeap = new AtomicLong(memory.getHeapMemoryUsage().getUsed());
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 100, TimeUnit.MILLISECONDS);
+
+        ExecutorService pipelines = Executors.newFixedThreadPool(CONCURRENCY);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < executions; i++) {
+                int executionNumber = i;
+                futures.add(pipelines.submit(() -> {
+                    long executionStart = System.nanoTime();
+                    TileVerificationExecutor tileExecutor = execution.run(executionNumber);
+                    latency.record(System.nanoTime() - executionStart);
+                    if (tileExecutor.getResponse().isFailed()) {
+                        failed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pipelines.shutdownNow();
+            sampler.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] gcAfter = getGarbageCollection();
+
+        System.out.println(String.format("%s load executions=%d concurrency=%d latencyMillis=%d faultRate=%.3f",
+                name, executions, CONCURRENCY, LATENCY_MILLIS, FAULT_RATE));
+        System.out.println(String.format("%s throughput=%.1f/s failed=%d faults=%d", name, executions / seconds,
+                failed.get(), this.faults.sum()));
+        System.out.println(name + " latency " + latency.getSnapshot());
+        System.out.println(String.format("%s threads peak=%d live=%d heap peakMB=%d maxMB=%d gcCount=%d gcMillis=%d",
+                name, threads.getPeakThreadCount(), threads.getThreadCount(), peakHeap.get() / (1024 * 1024),
+                memory.getHeapMemoryUsage().getMax() / (1024 * 1024), gcAfter[0] - gcBefore[0],
+                gcAfter[1] - gcBefore[1]));
+        System.out.println(name + " connections " + RESTClient.getConnectionPool().getStats());
+        System.out.println(name + " circuit breaker " + RESTClient.getCircuitBreaker().getStats());
+        System.out.print(RESTClient.getMetrics().toText());
+        return failed.get();
+    }
+
+    private static long[] getGarbageCollection() {
+        long[] collection = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collection[0] += Math.max(0, collector.getCollectionCount());
+            collection[1] += Math.max(0, collector.getCollectionTime());
+        }
+        return collection;
+    }
+
+    private void respond(HttpExchange exchange, String body) throws IOException {
+        try {
+            // Latency spread around the mean, as a real server's would be
+            long latencyMillis = (long) (LATENCY_MILLIS * (0.5 + ThreadLocalRandom.current().nextDouble()));
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Faults are split between a gateway error and a connection dropped without a response
+        if (ThreadLocalRandom.current().nextDouble() < FAULT_RATE) {
+            this.faults.increment();
+            if (ThreadLocalRandom.current().nextBoolean()) {
+                exchange.sendResponseHeaders(503, -1);
+            }
+            exchange.close();
+            return;
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
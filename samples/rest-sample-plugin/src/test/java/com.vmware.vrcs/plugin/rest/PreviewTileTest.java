@@ -22,6 +22,7 @@ import org.junit.Test;
 
 import com.vmware.fms.tile.common.TileExecutableResponse;
 import com.vmware.fms.tile.test.TileVerificationExecutor;
+import com.vmware.vrcs.plugin.rest.utils.ResponseCache;
 
 public class PreviewTileTest extends TestCase {
     private static final int TILE_EXECUTION_TIMEOUT_SEC = 100;
@@ -32,6 +33,7 @@ public class PreviewTileTest extends TestCase {
     public void setUp() throws Exception {
         this.tile = new PreviewTile();
         this.server.start();
+        ResponseCache.getShared().clear();
     }
 
     @Test
@@ -55,4 +57,33 @@ public class PreviewTileTest extends TestCase {
         assertTrue(responseString.contains("text/xml"));
         assertTrue(responseString.contains("Response body:"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPreviewIsCached() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/cached"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody("<response>Cached</response>")));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/uncached"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Cache-Control", "no-store")
+                        .withBody("<response>Uncached</response>")));
+
+        // The same preview twice only calls the server once, unless the server forbids caching
+        long hits = ResponseCache.getShared().getHits();
+        for (String path : new String[] { "/cached", "/cached", "/uncached", "/uncached" }) {
+            TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+            RequestProperty requestProperty = new RequestProperty(tileExecutor);
+            requestProperty.setEndpoint("http://localhost:9091", "", "");
+            requestProperty.setPath(path);
+            tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+            tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+            String responseString = tileExecutor.getResponse().getOutputProperties().getAsString("responsePreview");
+            assertTrue(responseString.contains("Response status: 200"));
+        }
+        this.server.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo("/cached")));
+        this.server.verify(2, WireMock.getRequestedFor(WireMock.urlEqualTo("/uncached")));
+        assertEquals(hits + 1, ResponseCache.getShared().getHits());
+    }
+}
@@ -22,30 +22,76 @@ public class RequestProperty {
     private String endpointUrl;
     private String endpointUsername;
     private String endpointPassword;
+    private String endpointTruststore;
+    private int endpointRateLimit;
+    private int endpointMaxConcurrency;
     private String path;
     private List<TileProperties> headers;
     private String method;
     private String body;
+    private int compressionThreshold;
     private String expectedStatuses;
     private String expectedResponse;
+    private String expectedJson;
+    private String onOversize;
+    private List<TileProperties> extract;
+    private boolean omitResponseBody;
+    private boolean coalesce;
+    private int connectTimeout;
+    private int readTimeout;
+    private int retries;
+    private boolean retryNonIdempotent;
+    private String paginate;
+    private String cursorPath;
+    private String cursorParam;
+    private String itemsPath;
+    private int pageLimit;
+    private boolean prefetch;
     private boolean setPoll;
     private int pollInterval;
     private int timeout;
+    private String pollStrategy;
+    private int maxInterval;
+    private int jitter;
+    private String waitMode;
     private TileUtils tileUtils;
 
     public RequestProperty(TileVerificationExecutor tileExecutor) {
         this.endpointUrl = "http://localhost:9090";
         this.endpointUsername = "";
         this.endpointPassword = "";
+        this.endpointTruststore = "";
+        this.endpointRateLimit = 0;
+        this.endpointMaxConcurrency = 0;
         this.path = "/";
         this.headers = new LinkedList<TileProperties>();
         this.method = "GET";
         this.body = "";
+        this.compressionThreshold = 0;
         this.expectedStatuses = "";
         this.expectedResponse = "";
+        this.expectedJson = "";
+        this.onOversize = "fail";
+        this.extract = new LinkedList<TileProperties>();
+        this.omitResponseBody = false;
+        this.coalesce = false;
+        this.connectTimeout = 0;
+        this.readTimeout = 0;
+        this.retries = 2;
+        this.retryNonIdempotent = false;
+        this.paginate = "none";
+        this.cursorPath = "";
+        this.cursorParam = "";
+        this.itemsPath = "";
+        this.pageLimit = 10;
+        this.prefetch = false;
         this.setPoll = false;
         this.pollInterval = 0;
         this.timeout = 0;
+        this.pollStrategy = "fixed";
+        this.maxInterval = 0;
+        this.jitter = 0;
+        this.waitMode = "interval";
         this.tileUtils = tileExecutor.getRequest().getTileUtils();
     }
 
@@ -55,6 +101,15 @@ public class RequestProperty {
         this.endpointPassword = password;
     }
 
+    public void setEndpointLimits(int rateLimit, int maxConcurrency) {
+        this.endpointRateLimit = rateLimit;
+        this.endpointMaxConcurrency = maxConcurrency;
+    }
+
+    public void setEndpointTruststore(String truststore) {
+        this.endpointTruststore = truststore;
+    }
+
     public void setPath(String requestPath) {
         this.path = requestPath;
     }
@@ -71,6 +126,10 @@ public class RequestProperty {
         this.body = body;
     }
 
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
     public void setExpectedStatus(String status) {
         this.expectedStatuses = status;
     }
@@ -79,6 +138,49 @@ public class RequestProperty {
         this.expectedResponse = expectedResponse;
     }
 
+    public void setExpectedJson(String expectedJson) {
+        this.expectedJson = expectedJson;
+    }
+
+    public void setOnOversize(String onOversize) {
+        this.onOversize = onOversize;
+    }
+
+    public void addExtract(String name, String expression) {
+        TileProperties extractProperty = this.tileUtils.newTileProperties();
+        extractProperty.setString("name", name);
+        extractProperty.setString("expression", expression);
+        this.extract.add(extractProperty);
+    }
+
+    public void setOmitResponseBody(boolean omitResponseBody) {
+        this.omitResponseBody = omitResponseBody;
+    }
+
+    public void setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
+    public void setRequestTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    public void setRetries(int retries, boolean retryNonIdempotent) {
+        this.retries = retries;
+        this.retryNonIdempotent = retryNonIdempotent;
+    }
+
+    public void setPagination(String paginate, String cursorPath, String cursorParam, String itemsPath,
+            int pageLimit, boolean prefetch) {
+        this.paginate = paginate;
+        this.cursorPath = cursorPath;
+        this.cursorParam = cursorParam;
+        this.itemsPath = itemsPath;
+        this.pageLimit = pageLimit;
+        this.prefetch = prefetch;
+    }
+
     public void setAsynchronous(boolean setPoll) {
         this.setPoll = setPoll;
     }
@@ -91,12 +193,25 @@ public class RequestProperty {
         this.timeout = timeout;
     }
 
+    public void setWaitMode(String waitMode) {
+        this.waitMode = waitMode;
+    }
+
+    public void setPollStrategy(String pollStrategy, int maxInterval, int jitter) {
+        this.pollStrategy = pollStrategy;
+        this.maxInterval = maxInterval;
+        this.jitter = jitter;
+    }
+
 
     public TileProperties getRequestTileProperty() {
         TileProperties endpointTileProperty = this.tileUtils.newTileProperties();
         endpointTileProperty.setString("url", this.endpointUrl);
         endpointTileProperty.setString("username", this.endpointUsername);
         endpointTileProperty.setString("password", this.endpointPassword);
+        endpointTileProperty.setString("truststore", this.endpointTruststore);
+        endpointTileProperty.setInteger("rateLimit", this.endpointRateLimit);
+        endpointTileProperty.setInteger("maxConcurrency", this.endpointMaxConcurrency);
 
         TileProperties tileProperties = this.tileUtils.newTileProperties();
         tileProperties.setProperties("endpoint", endpointTileProperty);
@@ -104,11 +219,31 @@ public class RequestProperty {
         tileProperties.setPropertiesArray("headers", this.headers);
         tileProperties.setString("method", this.method);
         tileProperties.setString("body", this.body);
+        tileProperties.setInteger("compressionThreshold", this.compressionThreshold);
         tileProperties.setString("expectedStatuses", this.expectedStatuses);
         tileProperties.setString("expectedResponse", this.expectedResponse);
+        tileProperties.setString("expectedJson", this.expectedJson);
+        tileProperties.setString("onOversize", this.onOversize);
+        tileProperties.setPropertiesArray("extract", this.extract);
+        tileProperties.setBoolean("omitResponseBody", this.omitResponseBody);
+        tileProperties.setBoolean("coalesce", this.coalesce);
+        tileProperties.setInteger("connectTimeout", this.connectTimeout);
+        tileProperties.setInteger("readTimeout", this.readTimeout);
+        tileProperties.setInteger("retries", this.retries);
+        tileProperties.setBoolean("retryNonIdempotent", this.retryNonIdempotent);
+        tileProperties.setString("paginate", this.paginate);
+        tileProperties.setString("cursorPath", this.cursorPath);
+        tileProperties.setString("cursorParam", this.cursorParam);
+        tileProperties.setString("itemsPath", this.itemsPath);
+        tileProperties.setInteger("pageLimit", this.pageLimit);
+        tileProperties.setBoolean("prefetch", this.prefetch);
         tileProperties.setBoolean("poll", this.setPoll);
         tileProperties.setInteger("interval", this.pollInterval);
         tileProperties.setInteger("timeout", this.timeout);
+        tileProperties.setString("pollStrategy", this.pollStrategy);
+        tileProperties.setInteger("maxInterval", this.maxInterval);
+        tileProperties.setInteger("jitter", this.jitter);
+        tileProperties.setString("waitMode", this.waitMode);
         return tileProperties;
     }
 
@@ -117,6 +252,9 @@ public class RequestProperty {
         endpointTileProperty.setString("url", this.endpointUrl);
         endpointTileProperty.setString("username", this.endpointUsername);
         endpointTileProperty.setString("password", this.endpointPassword);
+        endpointTileProperty.setString("truststore", this.endpointTruststore);
+        endpointTileProperty.setInteger("rateLimit", this.endpointRateLimit);
+        endpointTileProperty.setInteger("maxConcurrency", this.endpointMaxConcurrency);
         return endpointTileProperty;
     }
 }
@@ -15,11 +15,21 @@ package com.vmware.vrcs.plugin.rest;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 import static org.assertj.core.api.StrictAssertions.assertThat;
 
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 
@@ -32,6 +42,7 @@ import com.github.tomakehurst.wiremock.extension.Parameters;
 import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
 import com.github.tomakehurst.wiremock.http.Request;
 import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
 import junit.framework.TestCase;
 import org.junit.After;
 import org.junit.Before;
@@ -41,6 +52,10 @@ import com.vmware.fms.tile.common.TileExecutableResponse;
 import com.vmware.fms.tile.common.TileProperties;
 import com.vmware.fms.tile.executor.TilePropertiesImpl;
 import com.vmware.fms.tile.test.TileVerificationExecutor;
+import com.vmware.vrcs.plugin.rest.utils.CircuitBreaker;
+import com.vmware.vrcs.plugin.rest.utils.Metrics;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient;
+import com.vmware.vrcs.plugin.rest.utils.RateLimiter;
 
 public class TaskTileTest extends TestCase {
     private static final int TILE_EXECUTION_TIMEOUT_SEC = 100;
@@ -49,7 +64,15 @@ public class TaskTileTest extends TestCase {
     private static final String IO_ERROR = "Unable to read from/write to connection: ";
     private static final String REQUEST_FAIL = "Request failed with response code:";
     private static final String EXPECTED_RESPONSE_FAIL = "Request failed with unexpected response";
+    private static final String MALFORMED_STATUSES = "Expected status codes are malformed: ";
+    private static final String MALFORMED_CONDITION = "Expected JSON condition is malformed: ";
+    private static final String MALFORMED_PATH = "JSON path is malformed: ";
+    private static final String PAGINATE_POLL_FAIL = "Pagination cannot be combined with polling";
     private static final String ASYNC_TIMEOUT_FAIL = "Asynchronous request timed out";
+    private static final String DEADLINE_FAIL = "Request did not complete within its time limit";
+    private static final String CIRCUIT_OPEN_FAIL = "as it is failing";
+    private static final String MAX_RESPONSE_EXCEEDED = "Unable to read response body as it exceeds 4MB";
+    private static final int MAX_RESPONSE_SIZE_BYTES = 4 * 1024 * 1024;
 
     private TaskTile tile;
 
@@ -72,6 +95,9 @@ public class TaskTileTest extends TestCase {
     @After
     public void tearDown() throws Exception {
         this.server.stop();
+        // Failures seen by one test must not leave the circuit breaker open or the rate limits used up for the next
+        RESTClient.getCircuitBreaker().reset();
+        RESTClient.getRateLimiter().reset();
     }
 
     @Test
@@ -98,6 +124,72 @@ public class TaskTileTest extends TestCase {
         assertTrue(headers.keySet().contains("Status-Line") && headers.get("Status-Line").toString().contains("200"));
     }
 
+    @Test
+    public void testResponseBodyIsByteExact() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/test/crlf"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/plain; charset=UTF-8")
+                        .withBody("first line\r\nsecond line\r\n")));
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/test/crlf");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        String responseBody = tileResponse.getOutputProperties().getAsString("responseBody");
+        assertEquals("first line\r\nsecond line\r\n", responseBody);
+    }
+
+    @Test
+    public void testOversizedResponse() throws Exception {
+        char[] oversizedBody = new char[MAX_RESPONSE_SIZE_BYTES + 1024];
+        Arrays.fill(oversizedBody, 'a');
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/test/oversized"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody(new String(oversizedBody))));
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/test/oversized");
+
+        // Fail when the response body is too large
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(MAX_RESPONSE_EXCEEDED);
+
+        // Keep the first 4MB of the response body
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty.setOnOversize("truncate");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertEquals(MAX_RESPONSE_SIZE_BYTES, tileResponse.getOutputProperties().getAsString("responseBody").length());
+        assertTrue(tileResponse.getOutputProperties().getAsBoolean("responseTruncated"));
+
+        // Each euro sign is three bytes, so the 4MB limit cuts one in two. That one is left out rather than becoming a
+        // replacement character at the end of the body.
+        char[] multibyteBody = new char[MAX_RESPONSE_SIZE_BYTES / 3 + 1024];
+        Arrays.fill(multibyteBody, '\u20AC');
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/test/oversized/multibyte"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/plain; charset=UTF-8")
+                        .withBody(new String(multibyteBody).getBytes(StandardCharsets.UTF_8))));
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty.setPath("/test/oversized/multibyte");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        String responseBody = tileResponse.getOutputProperties().getAsString("responseBody");
+        assertEquals(MAX_RESPONSE_SIZE_BYTES / 3, responseBody.length());
+        assertEquals('\u20AC', responseBody.charAt(responseBody.length() - 1));
+    }
+
     @Test
     public void testRESTPost() throws Exception {
         this.server.stubFor(WireMock.post(WireMock.urlEqualTo("/test/post"))
@@ -143,6 +235,48 @@ public class TaskTileTest extends TestCase {
         assertTrue(responseBody.contains("Sample put is successful!"));
     }
 
+    @Test
+    public void testCompressedResponse() throws Exception {
+        ByteArrayOutputStream compressedBody = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressedBody)) {
+            gzipStream.write("<response>Compressed response</response>".getBytes(StandardCharsets.UTF_8));
+        }
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/test/gzip"))
+                .withHeader("Accept-Encoding", WireMock.containing("gzip"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Encoding", "gzip")
+                        .withBody(compressedBody.toByteArray())));
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/test/gzip");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertEquals(200, tileResponse.getOutputProperties().getAsInteger("responseStatus").intValue());
+        assertEquals("<response>Compressed response</response>", tileResponse.getOutputProperties().getAsString("responseBody"));
+    }
+
+    @Test
+    public void testCompressedRequestBody() throws Exception {
+        this.server.stubFor(WireMock.post(WireMock.urlEqualTo("/test/gzip"))
+                .withHeader("Content-Encoding", equalTo("gzip"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody("<response>Compressed request</response>")));
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/test/gzip");
+        requestProperty.setMethod("POST");
+        requestProperty.setBody("It's sample post contents that are long enough to be compressed.");
+        requestProperty.setCompressionThreshold(16);
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertEquals(200, tileResponse.getOutputProperties().getAsInteger("responseStatus").intValue());
+        assertTrue(tileResponse.getOutputProperties().getAsString("responseBody").contains("Compressed request"));
+    }
+
     @Test
     public void testRequestType() throws Exception {
         TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
@@ -203,6 +337,43 @@ public class TaskTileTest extends TestCase {
         assertThat(tileResponse.getOutputProperties().getAsString("responseBody").contains("Test is successful!"));
     }
 
+    @Test
+    public void testExpectedStatusRanges() throws Exception {
+        // This test is calling file: /resources/mappings/mockDataTest.json
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/Test");
+        requestProperty.setExpectedStatus("2xx, 304");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty.setExpectedStatus("199-201");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+
+        // A code is no longer matched by a part of another one
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty.setExpectedStatus("2000");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(MALFORMED_STATUSES);
+
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty.setExpectedStatus("201-204, 3xx");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(EXPECTED_RESPONSE_FAIL);
+    }
+
     @Test
     public void testExpectedResponse() throws Exception {
         // This test is calling file: /resources/mappings/mockDataTest.json
@@ -231,6 +402,227 @@ public class TaskTileTest extends TestCase {
         assertThat(tileResponse.getFailureMessage().contains(EXPECTED_RESPONSE_FAIL));
     }
 
+    @Test
+    public void testExpectedJson() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/json/task"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"progress\": 100, \"status\": \"DONE\", \"tags\": [\"a\", \"b\"]}")));
+
+        // Fields are compared regardless of the order they appear in
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/json/task");
+        requestProperty.setExpectedJson("$.status == \"DONE\" && $.progress >= 100 && $.tags[*] == \"b\"");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+
+        // The condition is also checked while the body streams in when the body is not kept
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/json/task");
+        requestProperty.setExpectedJson("$.owner exists || $.status =~ \"^DO\"");
+        requestProperty.setOmitResponseBody(true);
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+
+        // A condition that is not met fails the request
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/json/task");
+        requestProperty.setExpectedJson("$.status != \"DONE\"");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(EXPECTED_RESPONSE_FAIL);
+
+        // As does a malformed condition
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/json/task");
+        requestProperty.setExpectedJson("$.status = \"DONE\"");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(MALFORMED_CONDITION);
+    }
+
+    @Test
+    public void testExtractValues() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/extract/json"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"task\": {\"id\": \"t-42\", \"state\": \"DONE\"}, "
+                                + "\"items\": [{\"name\": \"a\"}, {\"name\": \"b\"}], \"padding\": [1, 2, 3]}")));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/extract/xml"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/xml")
+                        .withBody("<task id=\"t-42\"><state>DONE</state></task>")));
+
+        // Values are extracted while the body streams in and the body itself is dropped
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/extract/json");
+        requestProperty.addExtract("id", "$.task.id");
+        requestProperty.addExtract("names", "$.items[*].name");
+        requestProperty.addExtract("missing", "$.task.owner");
+        requestProperty.setOmitResponseBody(true);
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertEquals("", tileResponse.getOutputProperties().getAsString("responseBody"));
+        Map<String, Object> extracted = tileResponse.getOutputProperties().getAsJson("extracted");
+        assertEquals("t-42", extracted.get("id"));
+        assertEquals(Arrays.asList("a", "b"), extracted.get("names"));
+        assertNull(extracted.get("missing"));
+
+        // XPath expressions apply to XML bodies
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/extract/xml");
+        requestProperty.addExtract("id", "/task/@id");
+        requestProperty.addExtract("state", "/task/state");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertThat(tileResponse.getOutputProperties().getAsString("responseBody")).contains("<state>DONE</state>");
+        extracted = tileResponse.getOutputProperties().getAsJson("extracted");
+        assertEquals("t-42", extracted.get("id"));
+        assertEquals("DONE", extracted.get("state"));
+
+        // A malformed path fails the request before it is sent
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/extract/json");
+        requestProperty.addExtract("id", "$.items[-1]");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(MALFORMED_PATH);
+    }
+
+    @Test
+    public void testPagination() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/pages"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Link", "</pages?page=2>; rel=\"next\"")
+                        .withBody("[1, 2]")));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/pages?page=2"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Link", "</pages?page=3>; rel=\"next\"")
+                        .withBody("[3, 4]")));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/pages?page=3"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody("[5]")));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/cursor"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody("{\"items\": [{\"id\": \"a\"}], \"next\": \"c2\"}")));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/cursor?after=c2"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody("{\"items\": [{\"id\": \"b\"}], \"next\": null}")));
+
+        // Follow the Link header to the last page, fetching each next page ahead
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/pages");
+        requestProperty.setPagination("link", "", "", "", 10, true);
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertEquals("[1,2,3,4,5]", tileResponse.getOutputProperties().getAsString("responseBody"));
+        assertEquals(Integer.valueOf(3), tileResponse.getOutputProperties().getAsInteger("pageCount"));
+        assertFalse(tileResponse.getOutputProperties().getAsBoolean("hasMorePages"));
+
+        // Stop at the page limit and report that there are more pages
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/pages");
+        requestProperty.setPagination("link", "", "", "", 2, false);
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertEquals("[1,2,3,4]", tileResponse.getOutputProperties().getAsString("responseBody"));
+        assertTrue(tileResponse.getOutputProperties().getAsBoolean("hasMorePages"));
+
+        // Pass the cursor from each page to the next until there is none
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/cursor");
+        requestProperty.setPagination("cursor", "$.next", "after", "$.items", 10, false);
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertEquals("[{\"id\":\"a\"},{\"id\":\"b\"}]",
+                tileResponse.getOutputProperties().getAsString("responseBody"));
+        assertEquals(Integer.valueOf(2), tileResponse.getOutputProperties().getAsInteger("pageCount"));
+
+        // Pagination collects every page in one execution so it cannot also poll
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/pages");
+        requestProperty.setPagination("link", "", "", "", 10, false);
+        requestProperty.setAsynchronous(true);
+        requestProperty.setPollInterval(1);
+        requestProperty.setTimeout(5);
+        requestProperty.setExpectedResponse(".*");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(PAGINATE_POLL_FAIL);
+    }
+
+    @Test
+    public void testCoalescedRequests() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/coalesce"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(1000)
+                        .withBody("{\"status\": \"RUNNING\"}")));
+
+        // Identical requests sent at the same time share the response of a single request
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        List<Future<TileExecutableResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            responses.add(executor.submit(() -> {
+                TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+                RequestProperty requestProperty = new RequestProperty(tileExecutor);
+                requestProperty.setPath("/coalesce");
+                requestProperty.setCoalesce(true);
+                tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+                tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+                return tileExecutor.getResponse();
+            }));
+        }
+        for (Future<TileExecutableResponse> response : responses) {
+            TileExecutableResponse tileResponse = response.get();
+            assertFalse(tileResponse.isFailed());
+            assertEquals("{\"status\": \"RUNNING\"}", tileResponse.getOutputProperties().getAsString("responseBody"));
+        }
+        executor.shutdown();
+        this.server.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo("/coalesce")));
+    }
+
     @Test
     public void testDifferentHeaders() throws Exception {
         // This test is calling file: /resources/mappings/mockDataHeaders.json
@@ -422,6 +814,135 @@ public class TaskTileTest extends TestCase {
         assertThat(responseBody.contains("Original content"));
     }
 
+    @Test
+    public void testPollWithExponentialBackoff() throws Exception {
+        int pollInterval = 1;
+        int timeout = 30;
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/poll/Backoff"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody("Original content")
+                        .withTransformers("pollableHostTransformer")
+                        .withTransformerParameter("numAttempts", 4)));
+
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/poll/Backoff");
+        requestProperty.setAsynchronous(true);
+        requestProperty.setPollInterval(pollInterval);
+        requestProperty.setTimeout(timeout);
+        requestProperty.setPollStrategy("exponential", 4, 0);
+        requestProperty.setExpectedResponse("Original content");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeAndWaitForCompletion(timeout);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertEquals("Original content", tileResponse.getOutputProperties().getAsString("responseBody"));
+
+        // The interval doubled after each poll until it reached the maximum
+        assertEquals(4, tileResponse.getOutputProperties().getAsInteger("__interval").intValue());
+    }
+
+    @Test
+    public void testPollWithConditionalRequests() throws Exception {
+        int pollInterval = 1;
+        int timeout = 4;
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/poll/Conditional"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "\"v1\"")
+                        .withBody("Body is in progress")));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/poll/Conditional"))
+                .atPriority(1)
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(304)));
+
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/poll/Conditional");
+        requestProperty.setAsynchronous(true);
+        requestProperty.setPollInterval(pollInterval);
+        requestProperty.setTimeout(timeout);
+        requestProperty.setExpectedResponse("Body is complete");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeAndWaitForCompletion(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(ASYNC_TIMEOUT_FAIL);
+
+        // Later polls were answered with 304 and the outputs of the first poll were kept
+        assertFalse(this.server.findAll(WireMock.getRequestedFor(WireMock.urlEqualTo("/poll/Conditional"))
+                .withHeader("If-None-Match", equalTo("\"v1\""))).isEmpty());
+        assertEquals(200, tileResponse.getOutputProperties().getAsInteger("responseStatus").intValue());
+        assertEquals("Body is in progress", tileResponse.getOutputProperties().getAsString("responseBody"));
+    }
+
+    @Test
+    public void testPollWithServerSentEvents() throws Exception {
+        int timeout = 10;
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/poll/Events"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/event-stream")
+                        .withBody(": connected\n\nid: 1\ndata: Body is in progress\n\nid: 2\ndata: Body is complete\n\n"
+                                + "id: 3\ndata: Body is archived\n\n")));
+
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/poll/Events");
+        requestProperty.setAsynchronous(true);
+        requestProperty.setWaitMode("sse");
+        requestProperty.setTimeout(timeout);
+        requestProperty.setExpectedResponse("complete");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeAndWaitForCompletion(timeout);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+
+        // The task completed on the first matching event without waiting for an interval
+        assertEquals("Body is complete", tileResponse.getOutputProperties().getAsString("responseBody"));
+        assertEquals("2", tileResponse.getOutputProperties().getAsString("__lastEventId"));
+    }
+
+    @Test
+    public void testPollWithLongPolling() throws Exception {
+        int timeout = 15;
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/poll/LongPoll")).inScenario("longpoll")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("complete")
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(1000)
+                        .withBody("Body is in progress")));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/poll/LongPoll")).inScenario("longpoll")
+                .whenScenarioStateIs("complete")
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(1000)
+                        .withBody("Body is complete")));
+
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/poll/LongPoll");
+        requestProperty.setAsynchronous(true);
+        requestProperty.setWaitMode("longpoll");
+        requestProperty.setPollInterval(10);
+        requestProperty.setTimeout(timeout);
+        requestProperty.setExpectedResponse("complete");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        long start = System.nanoTime();
+        tileExecutor.executeAndWaitForCompletion(timeout);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertEquals("Body is complete", tileResponse.getOutputProperties().getAsString("responseBody"));
+
+        // The server held each request until it had an answer, so the next request went out straight away rather than
+        // after the poll interval
+        this.server.verify(2, WireMock.getRequestedFor(WireMock.urlEqualTo("/poll/LongPoll")));
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+    }
+
     @Test
     public void testPollWithExpectedStatuses() throws Exception {
         int pollInterval = 2;
@@ -580,4 +1101,223 @@ public class TaskTileTest extends TestCase {
         assertThat(!tileResponse.isFailed());
         assertEquals(500, responseStatus);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRequestTimeouts() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/slow"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(5000)
+                        .withBody("DONE")));
+
+        // A server that does not answer within the read timeout fails the request
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/slow");
+        requestProperty.setRequestTimeouts(1, 1);
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(IO_ERROR);
+
+        // A polling request is cut off when the polling timeout runs out, however long the read timeout
+        int timeout = 3;
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/slow");
+        requestProperty.setRequestTimeouts(0, 30);
+        requestProperty.setAsynchronous(true);
+        requestProperty.setPollInterval(1);
+        requestProperty.setTimeout(timeout);
+        requestProperty.setExpectedResponse("DONE");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeAndWaitForCompletion(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(DEADLINE_FAIL);
+    }
+
+    @Test
+    public void testRetries() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/flaky")).inScenario("flaky")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("recovered")
+                .willReturn(WireMock.aResponse().withStatus(503)));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/flaky")).inScenario("flaky")
+                .whenScenarioStateIs("recovered")
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("DONE")));
+        this.server.stubFor(WireMock.post(WireMock.urlEqualTo("/flaky"))
+                .willReturn(WireMock.aResponse().withStatus(429)));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/down"))
+                .willReturn(WireMock.aResponse().withStatus(502)));
+
+        // A GET that meets a briefly unavailable server is sent again
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/flaky");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        TileExecutableResponse tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertEquals(200, tileResponse.getOutputProperties().getAsInteger("responseStatus").intValue());
+        assertEquals("DONE", tileResponse.getOutputProperties().getAsString("responseBody"));
+        this.server.verify(2, WireMock.getRequestedFor(WireMock.urlEqualTo("/flaky")));
+
+        // A POST is not, as the server may have carried it out already
+        tileExecutor = new TileVerificationExecutor(this.tile);
+        requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/flaky");
+        requestProperty.setMethod("POST");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertEquals(429, tileResponse.getOutputProperties().getAsInteger("responseStatus").intValue());
+        this.server.verify(1, WireMock.postRequestedFor(WireMock.urlEqualTo("/flaky")));
+
+        // Once the server has failed enough times in a row, requests fail without being sent
+        for (int i = 0; i < 6; i++) {
+            tileExecutor = new TileVerificationExecutor(this.tile);
+            requestProperty = new RequestProperty(tileExecutor);
+            requestProperty.setPath("/down");
+            requestProperty.setRetries(0, false);
+            tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+            tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        }
+        tileResponse = tileExecutor.getResponse();
+        assertTrue(tileResponse.isFailed());
+        assertThat(tileResponse.getFailureMessage()).contains(CIRCUIT_OPEN_FAIL);
+        this.server.verify(5, WireMock.getRequestedFor(WireMock.urlEqualTo("/down")));
+    }
+
+    @Test
+    public void testPollOutlivesOpenCircuit() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/poll/restarting"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(503)));
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setPath("/poll/restarting");
+        requestProperty.setAsynchronous(true);
+        requestProperty.setPollInterval(1);
+        requestProperty.setTimeout(60);
+        requestProperty.setExpectedResponse("complete");
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+
+        // Each poll is sent up to three times and every 503 counts against the server, so the circuit opens during the
+        // second poll. From then on nothing is sent, but the task waits rather than failing.
+        TileExecutableResponse tileResponse = null;
+        for (int i = 0; i < 4; i++) {
+            tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+            tileResponse = tileExecutor.getResponse();
+            assertFalse(tileResponse.isFailed());
+            assertFalse(tileResponse.isCompleted());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, RESTClient.getCircuitBreaker().getState(new URL("http://localhost:9090")));
+        this.server.verify(5, WireMock.getRequestedFor(WireMock.urlEqualTo("/poll/restarting")));
+
+        // The next poll waits until the circuit lets a request through again
+        assertEquals(CircuitBreaker.DEFAULT_OPEN_MILLIS / 1000, tileResponse.getExecutionIntervalSeconds());
+
+        // Rather than wait that long, the test closes the circuit once the server is back
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/poll/restarting"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody("Body is complete")));
+        RESTClient.getCircuitBreaker().reset();
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        tileResponse = tileExecutor.getResponse();
+        assertFalse(tileResponse.isFailed());
+        assertTrue(tileResponse.isCompleted());
+        assertEquals("Body is complete", tileResponse.getOutputProperties().getAsString("responseBody"));
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/limited"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody("DONE")));
+
+        // The first two requests go straight away and the rest are held back to two a second, rather than failing
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+            RequestProperty requestProperty = new RequestProperty(tileExecutor);
+            requestProperty.setEndpointLimits(2, 1);
+            requestProperty.setPath("/limited");
+            tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+            tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+            assertFalse(tileExecutor.getResponse().isFailed());
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1400);
+        this.server.verify(5, WireMock.getRequestedFor(WireMock.urlEqualTo("/limited")));
+    }
+
+    @Test
+    public void testRateLimitPerEndpoint() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlMatching("/limited/.*"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody("DONE")));
+
+        // Two endpoints on the same server, one limited to a request a second and one to fifty, keep their own limits
+        // however their requests are interleaved
+        long start = System.nanoTime();
+        executeLimited("/limited/slow", 1);
+        for (int i = 0; i < 5; i++) {
+            executeLimited("/limited/fast", 50);
+        }
+        executeLimited("/limited/slow", 1);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+
+        // Only the second request to the slow endpoint was held back
+        List<RateLimiter.RouteStats> stats = RESTClient.getRateLimiter().getStats();
+        assertEquals(2, stats.size());
+        for (RateLimiter.RouteStats routeStats : stats) {
+            assertEquals(routeStats.getConfiguredRate() == 1.0 ? 1 : 0, routeStats.getDelayed());
+        }
+    }
+
+    private void executeLimited(String path, int rateLimit) throws Exception {
+        TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+        RequestProperty requestProperty = new RequestProperty(tileExecutor);
+        requestProperty.setEndpointLimits(rateLimit, 0);
+        requestProperty.setPath(path);
+        tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+        tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        assertFalse(tileExecutor.getResponse().isFailed());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/measured"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withBody("DONE")));
+        this.server.stubFor(WireMock.get(WireMock.urlEqualTo("/missing"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(404)));
+
+        Metrics metrics = RESTClient.getMetrics();
+        metrics.reset();
+        for (String path : Arrays.asList("/measured", "/missing")) {
+            TileVerificationExecutor tileExecutor = new TileVerificationExecutor(this.tile);
+            RequestProperty requestProperty = new RequestProperty(tileExecutor);
+            requestProperty.setPath(path);
+            tileExecutor.setInputProperties(requestProperty.getRequestTileProperty());
+            tileExecutor.executeOneIteration(TILE_EXECUTION_TIMEOUT_SEC);
+        }
+
+        // Both requests went to the same route, which counts them by status class and times each phase
+        List<Metrics.RouteStats> stats = metrics.getStats();
+        assertEquals(1, stats.size());
+        assertEquals(1, stats.get(0).getStatusCount(2));
+        assertEquals(1, stats.get(0).getStatusCount(4));
+        assertEquals(2, stats.get(0).getFirstByte().getCount());
+        assertTrue(stats.get(0).getBytesIn() >= "DONE".length());
+        assertEquals(2, metrics.getTimer("task.execution").getSnapshot().getCount());
+        assertTrue(metrics.toText().contains("2xx=1"));
+        assertTrue(metrics.toJson().contains("\"task.execution\":{\"count\":2"));
+    }
+}
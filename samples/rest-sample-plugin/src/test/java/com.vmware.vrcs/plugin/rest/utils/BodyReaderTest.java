@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class BodyReaderTest extends TestCase {
+
+    @Test
+    public void testTruncateKeepsWholeCharacters() throws Exception {
+        // Each euro sign is three bytes in UTF-8, so a limit of 10 bytes cuts the fourth one after its first byte
+        byte[] body = "€€€€€".getBytes(StandardCharsets.UTF_8);
+        BodyReader.Result result = BodyReader.read(new ByteArrayInputStream(body), -1, StandardCharsets.UTF_8, 10, true);
+        assertTrue(result.isExceeded());
+        assertEquals("€€€", result.getText());
+
+        // The same when the length was announced
+        result = BodyReader.read(new ByteArrayInputStream(body), body.length, StandardCharsets.UTF_8, 10, true);
+        assertTrue(result.isExceeded());
+        assertEquals("€€€", result.getText());
+    }
+
+    @Test
+    public void testTruncateKeepsMalformedInput() throws Exception {
+        // Bytes that are not UTF-8 before the cut are still replaced, the same as a body within the limit
+        byte[] body = { 'a', (byte) 0xff, 'b', 'c', 'd' };
+        BodyReader.Result result = BodyReader.read(new ByteArrayInputStream(body), -1, StandardCharsets.UTF_8, 4, true);
+        assertTrue(result.isExceeded());
+        assertEquals("a\uFFFDbc", result.getText());
+    }
+
+    @Test
+    public void testBodyWithinLimit() throws Exception {
+        byte[] body = "€€€".getBytes(StandardCharsets.UTF_8);
+        BodyReader.Result result = BodyReader.read(new ByteArrayInputStream(body), -1, StandardCharsets.UTF_8, 9, true);
+        assertFalse(result.isExceeded());
+        assertEquals("€€€", result.getText());
+        assertEquals(9, result.getBytesRead());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.net.URL;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class CircuitBreakerTest extends TestCase {
+    private static final String CIRCUIT_OPEN_FAIL = "as it is failing";
+
+    @Test
+    public void testOpensAfterFailuresInARow() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 60000L);
+        URL url = new URL("http://localhost:9090/down");
+
+        // A request that never reached the server neither resets the failures nor counts as one
+        circuitBreaker.acquire(url);
+        circuitBreaker.record(url, false);
+        circuitBreaker.acquire(url);
+        circuitBreaker.release(url);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(url));
+        circuitBreaker.acquire(url);
+        circuitBreaker.record(url, false);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(url));
+
+        try {
+            circuitBreaker.acquire(url);
+            fail("Open circuit should have failed the request");
+        } catch (RESTException e) {
+            assertTrue(e.getMessage().contains(CIRCUIT_OPEN_FAIL));
+        }
+        assertEquals(2, circuitBreaker.getStats().get(0).getFailures());
+        assertEquals(0, circuitBreaker.getStats().get(0).getSuccesses());
+        assertEquals(1, circuitBreaker.getStats().get(0).getRejected());
+    }
+
+    @Test
+    public void testReleasedProbeLeavesCircuitOpen() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 100L);
+        URL url = new URL("http://localhost:9090/down");
+        circuitBreaker.acquire(url);
+        circuitBreaker.record(url, false);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(url));
+
+        // The request let through to test the server gave up before sending, so the next one tests it instead
+        Thread.sleep(150);
+        circuitBreaker.acquire(url);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(url));
+        circuitBreaker.release(url);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(url));
+
+        circuitBreaker.acquire(url);
+        circuitBreaker.record(url, true);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(url));
+    }
+}
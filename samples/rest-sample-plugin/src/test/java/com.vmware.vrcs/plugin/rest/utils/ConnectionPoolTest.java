@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTRequest;
+
+public class ConnectionPoolTest extends TestCase {
+    private static final String LEASE_TIMEOUT_ERROR = "Timed out after 100 ms waiting for a connection to ";
+
+    @Test
+    public void testLeaseWaitsForConnection() throws Exception {
+        ConnectionPool connectionPool = new ConnectionPool(1, 60000L, 5000L);
+        URL url = new URL("http://localhost:9090/first");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // The second lease on the route waits until the first is released
+            ConnectionPool.Lease lease = connectionPool.lease(url);
+            Future<ConnectionPool.Lease> waiting = executor.submit(() -> connectionPool.lease(
+                    new URL("http://localhost:9090/second")));
+            Thread.sleep(200);
+            assertFalse(waiting.isDone());
+            lease.close();
+            waiting.get(5, TimeUnit.SECONDS).close();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<ConnectionPool.RouteStats> stats = connectionPool.getStats();
+        assertEquals(1, stats.size());
+        assertEquals("http://localhost:9090", stats.get(0).getRoute());
+        assertEquals(2, stats.get(0).getTotalLeases());
+        assertEquals(1, stats.get(0).getWaitedLeases());
+        assertEquals(0, stats.get(0).getTimedOutLeases());
+        assertEquals(1, stats.get(0).getPeakInFlight());
+        assertEquals(0, stats.get(0).getInFlight());
+    }
+
+    @Test
+    public void testLeaseTimeout() throws Exception {
+        ConnectionPool connectionPool = new ConnectionPool(1, 60000L, 5000L);
+        URL url = new URL("http://localhost:9090");
+        ConnectionPool.Lease lease = connectionPool.lease(url);
+        try {
+            connectionPool.lease(url, 100);
+            fail("Lease should have timed out");
+        } catch (RESTException e) {
+            assertTrue(e.getMessage().startsWith(LEASE_TIMEOUT_ERROR));
+        } finally {
+            lease.close();
+        }
+
+        // Another route is not held up by the one that is busy
+        connectionPool.lease(new URL("http://127.0.0.1:9090"), 100).close();
+
+        for (ConnectionPool.RouteStats routeStats : connectionPool.getStats()) {
+            assertEquals(routeStats.getRoute().equals("http://localhost:9090") ? 1 : 0, routeStats.getTimedOutLeases());
+            assertEquals(0, routeStats.getInFlight());
+        }
+    }
+
+    @Test
+    public void testConnectionReuseIsOnlyKnownForHttps() throws Exception {
+        ConnectionPool connectionPool = new ConnectionPool();
+        try (ConnectionPool.Lease lease = connectionPool.lease(new URL("http://localhost:9090"))) {
+            lease.recordConnection(true);
+        }
+        for (boolean isNew : new boolean[] { true, false, false }) {
+            try (ConnectionPool.Lease lease = connectionPool.lease(new URL("https://localhost:8443"))) {
+                lease.recordConnection(isNew);
+            }
+        }
+
+        for (ConnectionPool.RouteStats routeStats : connectionPool.getStats()) {
+            if (routeStats.getRoute().startsWith("https:")) {
+                assertTrue(routeStats.isReuseKnown());
+                assertEquals(2, routeStats.getReusedConnections());
+                assertEquals(1, routeStats.getNewConnections());
+                assertEquals(2.0 / 3, routeStats.getReuseRatio(), 0.001);
+                assertTrue(routeStats.toString().contains("reused=2 new=1"));
+            } else {
+                // HttpURLConnection does not say whether a plain HTTP request reused a socket
+                assertFalse(routeStats.isReuseKnown());
+                assertEquals(-1, routeStats.getReusedConnections());
+                assertEquals(-1, routeStats.getNewConnections());
+                assertFalse(routeStats.toString().contains("reused="));
+            }
+        }
+    }
+
+    @Test
+    public void testHttpsConnectionReuse() throws Exception {
+        WireMockServer server = new WireMockServer(wireMockConfig().port(9090).httpsPort(8443));
+        server.start();
+        try {
+            server.stubFor(WireMock.get(WireMock.urlEqualTo("/reused"))
+                    .willReturn(WireMock.aResponse()
+                            .withStatus(200)
+                            .withBody("DONE")));
+
+            // The first request opens a connection and the second is sent on it once it is back in the keep-alive cache
+            for (int i = 0; i < 2; i++) {
+                assertEquals("DONE", RESTClient.execute(new RESTRequest()
+                        .setEndpointUrl("https://localhost:8443")
+                        .setPath("/reused")).getBody());
+            }
+        } finally {
+            server.stop();
+        }
+
+        ConnectionPool.RouteStats routeStats = RESTClient.getConnectionPool().getStats().stream()
+                .filter(stats -> stats.getRoute().equals("https://localhost:8443"))
+                .findFirst()
+                .orElse(null);
+        assertNotNull(routeStats);
+        assertEquals(1, routeStats.getNewConnections());
+        assertEquals(1, routeStats.getReusedConnections());
+    }
+}
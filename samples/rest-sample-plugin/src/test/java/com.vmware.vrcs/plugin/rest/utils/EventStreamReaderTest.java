@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+
+public class EventStreamReaderTest extends TestCase {
+    private static final String EVENT_TOO_LARGE_ERROR = "Unable to read server-sent event as it exceeds 1024 bytes";
+
+    @Test
+    public void testEvents() throws Exception {
+        String stream = ": heartbeat\r\nid: 1\nevent: status\ndata: first\ndata:second\r\n\r\ndata: third\n\n";
+        EventStreamReader reader = new EventStreamReader(
+                new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)), 1024);
+        EventStreamReader.Event event = reader.next();
+        assertEquals("1", event.getId());
+        assertEquals("status", event.getType());
+        assertEquals("first\nsecond", event.getData());
+        event = reader.next();
+        assertEquals("1", event.getId());
+        assertEquals("message", event.getType());
+        assertEquals("third", event.getData());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testEndlessLineIsTooLarge() throws Exception {
+        // A data line that never ends is rejected once it passes the limit rather than read until memory runs out
+        CountingInputStream inputStream = new CountingInputStream();
+        EventStreamReader reader = new EventStreamReader(inputStream, 1024);
+        try {
+            reader.next();
+            fail("Endless event should have been too large");
+        } catch (RESTException e) {
+            assertEquals(EVENT_TOO_LARGE_ERROR, e.getMessage());
+        }
+        assertTrue(inputStream.count < 64 * 1024);
+    }
+
+    @Test
+    public void testEventTooLargeAcrossLines() throws Exception {
+        StringBuilder stream = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            stream.append("data: ").append(new String(new char[100]).replace('\0', 'a')).append('\n');
+        }
+        EventStreamReader reader = new EventStreamReader(
+                new ByteArrayInputStream(stream.append('\n').toString().getBytes(StandardCharsets.UTF_8)), 1024);
+        try {
+            reader.next();
+            fail("Event should have been too large");
+        } catch (RESTException e) {
+            assertEquals(EVENT_TOO_LARGE_ERROR, e.getMessage());
+        }
+    }
+
+    private static class CountingInputStream extends InputStream {
+        private static final String PREFIX = "data: ";
+        private long count;
+
+        @Override
+        public int read() {
+            // The field name followed by the letter a forever
+            int read = this.count < PREFIX.length() ? PREFIX.charAt((int) this.count) : 'a';
+            this.count++;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class PatternCacheTest extends TestCase {
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        PatternCache patternCache = new PatternCache(PatternCache.DEFAULT_MAX_SIZE);
+        PatternCache.Expression expression = patternCache.get("status: (done|failed)");
+        assertSame(expression, patternCache.get("status: (done|failed)"));
+        assertEquals(1, patternCache.getHits());
+        assertEquals(1, patternCache.getMisses());
+
+        // The same expression with other flags is compiled on its own
+        assertNotSame(expression, patternCache.get("status: (done|failed)", Pattern.CASE_INSENSITIVE));
+        assertEquals(2, patternCache.getMisses());
+        assertEquals(2, patternCache.getSize());
+        assertEquals("size=2/256 hits=1 misses=2", patternCache.toString());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        PatternCache patternCache = new PatternCache(2);
+        patternCache.get("a+");
+        patternCache.get("b+");
+
+        // Using the first expression again makes the second the least recently used one
+        patternCache.get("a+");
+        patternCache.get("c+");
+        assertEquals(2, patternCache.getSize());
+        assertEquals(3, patternCache.getMisses());
+
+        patternCache.get("a+");
+        assertEquals(3, patternCache.getMisses());
+        patternCache.get("b+");
+        assertEquals(4, patternCache.getMisses());
+        assertEquals(2, patternCache.getSize());
+    }
+
+    @Test
+    public void testLiteralIsNotCompiled() throws Exception {
+        PatternCache patternCache = new PatternCache(PatternCache.DEFAULT_MAX_SIZE);
+        PatternCache.Expression expression = patternCache.get("Success");
+        assertFalse(expression.isCompiled());
+        assertTrue(expression.find("<response>Success</response>"));
+        assertFalse(expression.find("<response>Failure</response>"));
+
+        // Text with regex metacharacters is only taken as it is when asked for
+        expression = patternCache.get("1+1", Pattern.LITERAL);
+        assertFalse(expression.isCompiled());
+        assertTrue(expression.find("1+1=2"));
+        assertFalse(expression.find("11=2"));
+    }
+
+    @Test
+    public void testAnchoredLiteralIsNotCompiled() throws Exception {
+        PatternCache patternCache = new PatternCache(PatternCache.DEFAULT_MAX_SIZE);
+        PatternCache.Expression expression = patternCache.get("^<response>");
+        assertFalse(expression.isCompiled());
+        assertTrue(expression.find("<response>Success</response>"));
+        assertFalse(expression.find("<?xml?><response>Success</response>"));
+    }
+
+    @Test
+    public void testRegexIsCompiled() throws Exception {
+        PatternCache patternCache = new PatternCache(PatternCache.DEFAULT_MAX_SIZE);
+        PatternCache.Expression expression = patternCache.get("^status: (done|failed)$");
+        assertTrue(expression.isCompiled());
+        assertTrue(expression.find("status: done"));
+        assertFalse(expression.find("status: running"));
+
+        // Any flag other than LITERAL needs the regex engine, even for plain text
+        expression = patternCache.get("success", Pattern.CASE_INSENSITIVE);
+        assertTrue(expression.isCompiled());
+        assertTrue(expression.find("SUCCESS"));
+    }
+}
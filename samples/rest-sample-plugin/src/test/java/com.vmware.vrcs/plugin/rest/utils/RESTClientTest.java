@@ -0,0 +1,244 @@
+/*
+ * Copyright © 2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Some files may be comprised of various open source software components, each of which
+ * has its own license that is located in the source code of the respective component.
+ */
+
+package com.vmware.vrcs.plugin.rest.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTException;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTRequest;
+import com.vmware.vrcs.plugin.rest.utils.RESTClient.RESTResponse;
+
+public class RESTClientTest extends TestCase {
+    private static final String MAX_RESPONSE_EXCEEDED = "Unable to read response body as it exceeds 4MB";
+    private static final int MAX_RESPONSE_SIZE_BYTES = 4 * 1024 * 1024;
+    private static final String ASYNC_REJECTED_ERROR = "Unable to schedule asynchronous request: ";
+
+    // WireMock sends a body all at once with its length, so the server is one that can hold a response open and write
+    // it bit by bit without saying how long it is
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String endpointUrl;
+    private final List<String> acceptHeaders = new CopyOnWriteArrayList<>();
+    private final CountDownLatch held = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/heartbeats", exchange -> {
+            // A stream kept alive with heartbeat comments for 30 seconds that never sends an event
+            this.acceptHeaders.add(exchange.getRequestHeaders().getFirst("Accept"));
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                for (int i = 0; i < 300; i++) {
+                    outputStream.write(": heartbeat\n\n".getBytes(StandardCharsets.UTF_8));
+                    outputStream.flush();
+                    Thread.sleep(100);
+                }
+            } catch (IOException | InterruptedException e) {
+                // The client closed the stream
+            }
+        });
+        this.server.createContext("/oversized", exchange -> {
+            // A chunked response does not announce its size, so the limit can only be found while reading it
+            byte[] chunk = new byte[64 * 1024];
+            Arrays.fill(chunk, (byte) 'a');
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                for (int i = 0; i < MAX_RESPONSE_SIZE_BYTES / chunk.length + 1; i++) {
+                    outputStream.write(chunk);
+                }
+            } catch (IOException e) {
+                // The client stopped reading at the limit
+            }
+        });
+        this.server.createContext("/held", exchange -> {
+            // Every response is held back until the test lets them all go
+            try {
+                this.held.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "DONE".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        this.serverExecutor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.serverExecutor);
+        this.server.start();
+        this.endpointUrl = "http://localhost:" + this.server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.held.countDown();
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+        RESTClient.getCircuitBreaker().reset();
+    }
+
+    @Test
+    public void testStreamWindowWithHeartbeatsOnly() throws Exception {
+        // The headers cannot be changed, so asking for an event stream must not add Accept to them
+        RESTRequest restRequest = new RESTRequest()
+                .setEndpointUrl(this.endpointUrl)
+                .setPath("/heartbeats")
+                .setHeaders(Collections.emptyMap());
+        long start = System.nanoTime();
+        RESTResponse restResponse = RESTClient.stream(restRequest, 1000, event -> true);
+
+        // Each heartbeat starts the read timeout again, yet the stream was closed at the end of its 1 second window
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 1000 && elapsedMillis < 5000);
+        assertEquals(200, restResponse.getStatus());
+        assertEquals("", restResponse.getBody());
+        assertEquals("", restResponse.getLastEventId());
+        assertEquals(Collections.singletonList("text/event-stream"), this.acceptHeaders);
+
+        // An Accept header chosen by the user is sent as it is
+        RESTClient.stream(restRequest.setHeaders(Collections.singletonMap("accept", "text/plain")), 500, event -> true);
+        assertEquals("text/plain", this.acceptHeaders.get(1));
+    }
+
+    @Test
+    public void testOversizedChunkedResponse() throws Exception {
+        RESTRequest restRequest = new RESTRequest()
+                .setEndpointUrl(this.endpointUrl)
+                .setPath("/oversized");
+
+        // Fail when the response body turns out to be too large
+        RESTResponse restResponse = RESTClient.execute(restRequest);
+        assertEquals(200, restResponse.getStatus());
+        try {
+            restResponse.getBody();
+            fail("Oversized response body should have failed");
+        } catch (RESTException e) {
+            assertTrue(e.getMessage().startsWith(MAX_RESPONSE_EXCEEDED));
+        }
+
+        // Keep the first 4MB of the response body
+        restResponse = RESTClient.execute(restRequest.setOnOversize("truncate"));
+        assertEquals(MAX_RESPONSE_SIZE_BYTES, restResponse.getBody().length());
+        assertTrue(restResponse.isTruncated());
+    }
+
+    @Test
+    public void testExecuteAsync() throws Exception {
+        this.held.countDown();
+        CompletableFuture<RESTResponse> future = RESTClient.executeAsync(new RESTRequest()
+                .setEndpointUrl(this.endpointUrl)
+                .setPath("/held"));
+        assertEquals("DONE", future.get(10, TimeUnit.SECONDS).getBody());
+
+        // A request that fails completes its future with the error instead of throwing it
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        future = RESTClient.executeAsync(new RESTRequest().setEndpointUrl("http://localhost:" + port));
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Request to a closed port should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RESTException);
+        }
+    }
+
+    @Test
+    public void testExecuteAsyncRejectsWhenQueueIsFull() throws Exception {
+        // Fill every thread and then the queue with requests that cannot finish until the server lets them go. Threads
+        // still busy with requests from earlier tests only make the queue fill up sooner.
+        RESTRequest restRequest = new RESTRequest()
+                .setEndpointUrl(this.endpointUrl)
+                .setPath("/held");
+        List<CompletableFuture<RESTResponse>> accepted = new ArrayList<>();
+        CompletableFuture<RESTResponse> rejected = null;
+        for (int i = 0; i <= RESTClient.ASYNC_THREADS + RESTClient.ASYNC_QUEUE_SIZE && rejected == null; i++) {
+            CompletableFuture<RESTResponse> future = RESTClient.executeAsync(restRequest);
+            if (future.isCompletedExceptionally()) {
+                rejected = future;
+            } else {
+                accepted.add(future);
+            }
+        }
+        assertNotNull(rejected);
+        try {
+            rejected.join();
+            fail("Request beyond the queue should have been rejected");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof RESTException);
+            assertTrue(e.getCause().getMessage().startsWith(ASYNC_REJECTED_ERROR));
+        }
+
+        // The requests that were accepted all complete once the server answers
+        this.held.countDown();
+        for (CompletableFuture<RESTResponse> future : accepted) {
+            assertEquals(200, future.get(30, TimeUnit.SECONDS).getStatus());
+        }
+    }
+
+    @Test
+    public void testLocalFailuresDoNotCountAgainstServer() throws Exception {
+        // Nothing listens on the port, so every request that is sent fails to connect
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        String endpointUrl = "https://localhost:" + port;
+        URL url = new URL(endpointUrl);
+        for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            if (i == CircuitBreaker.DEFAULT_FAILURE_THRESHOLD - 1) {
+                // A request that fails before it is sent says nothing about the server and does not reset the count
+                try {
+                    RESTClient.execute(new RESTRequest().setEndpointUrl(endpointUrl)
+                            .setEndpointTruststore("not a certificate"));
+                    fail("Request with a malformed truststore should have failed");
+                } catch (RESTException e) {
+                    assertEquals(CircuitBreaker.State.CLOSED, RESTClient.getCircuitBreaker().getState(url));
+                }
+            }
+            try {
+                RESTClient.execute(new RESTRequest().setEndpointUrl(endpointUrl));
+                fail("Request to a closed port should have failed");
+            } catch (RESTException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, RESTClient.getCircuitBreaker().getState(url));
+    }
+}